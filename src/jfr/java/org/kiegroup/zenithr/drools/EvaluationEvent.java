@@ -0,0 +1,88 @@
+package org.kiegroup.zenithr.drools;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One traced rule evaluation as a Flight Recorder event, lasting from parsing the inputs to extracting the output,
+ * with the time spent in each phase. This source set is only compiled on JDK 11 or later, where the
+ * <code>jdk.jfr</code> API exists, and the event is only loaded when <code>zenithr.jfr</code> is set.
+ */
+@Name("org.kiegroup.zenithr.Evaluation")
+@Label("Rule Evaluation")
+@Category("Zenithr")
+@Description("One evaluation of a spec and the time spent in each of its phases")
+@StackTrace(false)
+class EvaluationEvent extends Event {
+    @Label("Spec")
+    String spec;
+
+    @Label("Inputs")
+    int inputs;
+
+    @Label("Rules Fired")
+    int rulesFired;
+
+    @Label("Parse")
+    @Timespan
+    long parse;
+
+    @Label("Facts")
+    @Timespan
+    long facts;
+
+    @Label("Session")
+    @Timespan
+    long session;
+
+    @Label("Insert")
+    @Timespan
+    long insert;
+
+    @Label("Fire")
+    @Timespan
+    long fire;
+
+    @Label("Extract")
+    @Timespan
+    long extract;
+
+    /**
+     * Looked up by name from {@link Diagnostics}, so the default build does not depend on it.
+     */
+    static class Tracer implements EvaluationTracer {
+        @Override
+        public Object start() {
+            EvaluationEvent event = new EvaluationEvent();
+            event.begin();
+            return event;
+        }
+
+        @Override
+        public void commit(Object started, Diagnostics.Trace trace) {
+            EvaluationEvent.commit(started, trace);
+        }
+    }
+
+    private static void commit(Object started, Diagnostics.Trace trace) {
+        EvaluationEvent event = (EvaluationEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.spec = trace.serviceName;
+            event.inputs = trace.inputs;
+            event.rulesFired = trace.rulesFired;
+            event.parse = trace.phaseNanos[RuleMetrics.Phase.PARSE.ordinal()];
+            event.facts = trace.phaseNanos[RuleMetrics.Phase.FACTS.ordinal()];
+            event.session = trace.phaseNanos[RuleMetrics.Phase.SESSION.ordinal()];
+            event.insert = trace.phaseNanos[RuleMetrics.Phase.INSERT.ordinal()];
+            event.fire = trace.phaseNanos[RuleMetrics.Phase.FIRE.ordinal()];
+            event.extract = trace.phaseNanos[RuleMetrics.Phase.EXTRACT.ordinal()];
+            event.commit();
+        }
+    }
+}
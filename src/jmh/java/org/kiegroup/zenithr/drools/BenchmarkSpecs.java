@@ -0,0 +1,117 @@
+package org.kiegroup.zenithr.drools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Specs and matching request parameters shared by the benchmarks, covering different input counts, rule counts and
+ * input types:
+ * <ul>
+ * <li><code>grades</code>: one double input, five letter grade ranges</li>
+ * <li><code>ranges</code>: one double input, two hundred adjacent ranges</li>
+ * <li><code>wide</code>: five inputs of every primitive type and string, twenty rules mixing them</li>
+ * <li><code>dates</code>: a date and a double input, ten rules comparing both</li>
+ * </ul>
+ */
+public class BenchmarkSpecs {
+    public static final String[] NAMES = {"grades", "ranges", "wide", "dates"};
+
+    /**
+     * @param engine the <code>engine</code> of the spec, "auto" or "drools"
+     */
+    public static String get(String name, String engine) {
+        StringBuilder rules = new StringBuilder();
+        String input;
+        String outputType;
+        switch (name) {
+            case "grades":
+                input = "{\"name\": \"grade\", \"type\": \"double\"}";
+                outputType = "string";
+                String[] letters = {"A", "B", "C", "D"};
+                for (int index = 0; index < letters.length; index++) {
+                    rule(rules, String.format("grade >= %d && grade < %d", 90 - index * 10, 100 - index * 10), letters[index]);
+                }
+                rule(rules, "grade < 60", "F");
+                break;
+            case "ranges":
+                input = "{\"name\": \"amount\", \"type\": \"double\"}";
+                outputType = "string";
+                for (int index = 0; index < 200; index++) {
+                    rule(rules, String.format("amount >= %d && amount < %d", index * 5, index * 5 + 5), "band" + index);
+                }
+                break;
+            case "wide":
+                input = "{\"name\": \"age\", \"type\": \"int\"}, {\"name\": \"income\", \"type\": \"long\"}, "
+                        + "{\"name\": \"ratio\", \"type\": \"double\"}, {\"name\": \"member\", \"type\": \"boolean\"}, "
+                        + "{\"name\": \"tier\", \"type\": \"string\"}";
+                outputType = "double";
+                for (int index = 0; index < 20; index++) {
+                    String when = String.format("age >= %d && income > %d && ratio < %s && member == %b", 18 + index * 3, index * 5000, 0.05 * (index + 1), index % 2 == 0);
+                    if (index % 5 == 0) {
+                        when += " && tier == \\\"gold\\\"";
+                    }
+                    rule(rules, when, "ratio * " + (index + 1));
+                }
+                break;
+            case "dates":
+                input = "{\"name\": \"opened\", \"type\": \"date\"}, {\"name\": \"balance\", \"type\": \"double\"}";
+                outputType = "string";
+                for (int index = 0; index < 10; index++) {
+                    rule(rules, String.format("opened >= \\\"%d-01-01\\\" && balance > %d", 2000 + index * 2, index * 1000), "segment" + index);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown benchmark spec: " + name);
+        }
+        return String.format("{\"name\": \"%s\", \"input\": [%s], \"rules\": [%s], \"output\": {\"type\": \"%s\"}, \"engine\": \"%s\"}",
+                name, input, rules, outputType, engine);
+    }
+
+    private static void rule(StringBuilder rules, String when, String output) {
+        if (rules.length() > 0) {
+            rules.append(", ");
+        }
+        rules.append("{\"when\": \"").append(when).append("\", \"then\": {\"output\": \"").append(output).append("\"}}");
+    }
+
+    /**
+     * @return request parameters for the named spec, generated from a fixed seed so every run sees the same rows
+     */
+    public static List<Map<String, String[]>> rows(String name, int count) {
+        Random random = new Random(42);
+        List<Map<String, String[]>> rows = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            Map<String, String[]> row = new HashMap<>();
+            switch (name) {
+                case "grades":
+                    put(row, "grade", random.nextDouble() * 100);
+                    break;
+                case "ranges":
+                    put(row, "amount", random.nextDouble() * 1000);
+                    break;
+                case "wide":
+                    put(row, "age", 18 + random.nextInt(60));
+                    put(row, "income", (long) random.nextInt(100000));
+                    put(row, "ratio", random.nextDouble());
+                    put(row, "member", random.nextBoolean());
+                    put(row, "tier", random.nextBoolean() ? "gold" : "silver");
+                    break;
+                case "dates":
+                    put(row, "opened", String.format("%d-%02d-%02d", 1995 + random.nextInt(25), 1 + random.nextInt(12), 1 + random.nextInt(28)));
+                    put(row, "balance", random.nextDouble() * 10000);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown benchmark spec: " + name);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static void put(Map<String, String[]> row, String name, Object value) {
+        row.put(name, new String[]{String.valueOf(value)});
+    }
+}
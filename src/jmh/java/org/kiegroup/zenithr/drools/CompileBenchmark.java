@@ -0,0 +1,41 @@
+package org.kiegroup.zenithr.drools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to compile a spec into a ready SessionFactory, as <code>SessionFactory.init()</code> does at startup. Each
+ * measurement is a single cold-ish build, so the numbers include KieBuilder work that a warm JVM still repeats.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class CompileBenchmark {
+
+    @Param({"grades", "ranges", "wide", "dates"})
+    public String spec;
+
+    @Param({"drl", "executable-model"})
+    public String buildMode;
+
+    @Benchmark
+    public SessionFactory compile() {
+        System.setProperty(SessionFactory.BUILD_MODE, buildMode);
+        SessionFactory sessionFactory = SessionFactory.compile(BenchmarkSpecs.get(spec, "drools"));
+        sessionFactory.getSessionPool().close();
+        return sessionFactory;
+    }
+}
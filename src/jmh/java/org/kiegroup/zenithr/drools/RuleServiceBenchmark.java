@@ -0,0 +1,71 @@
+package org.kiegroup.zenithr.drools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation path of a compiled spec: parsing request parameters into facts, and a full <code>getOutput</code> call
+ * including the session pool and either Drools or the direct evaluator.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RuleServiceBenchmark {
+    private static final int ROWS = 1024;
+
+    @Param({"grades", "ranges", "wide", "dates"})
+    public String spec;
+
+    @Param({"auto", "drools"})
+    public String engine;
+
+    private SessionFactory sessionFactory;
+    private List<Map<String, String[]>> rows;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sessionFactory = SessionFactory.compile(BenchmarkSpecs.get(spec, engine));
+        rows = BenchmarkSpecs.rows(spec, ROWS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.getSessionPool().close();
+    }
+
+    private Map<String, String[]> nextRow() {
+        next = (next + 1) & (ROWS - 1);
+        return rows.get(next);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object getOutput() {
+        return RuleService.getOutput(sessionFactory, nextRow());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public List<Object> getFacts() {
+        return sessionFactory.getFacts(nextRow());
+    }
+}
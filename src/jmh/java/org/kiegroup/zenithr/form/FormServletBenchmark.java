@@ -0,0 +1,65 @@
+package org.kiegroup.zenithr.form;
+
+import org.kiegroup.zenithr.drools.BenchmarkSpecs;
+import org.kiegroup.zenithr.drools.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTML rendering of the form, empty as served from the page cache and filled in with a result, without the servlet
+ * container around it.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FormServletBenchmark {
+
+    @Param({"grades", "wide"})
+    public String spec;
+
+    private FormServlet formServlet;
+    private SessionFactory sessionFactory;
+    private Map<String, String[]> row;
+    private ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("GET", BenchmarkSpecs.get(spec, "auto"));
+        sessionFactory = SessionFactory.getInstance();
+        formServlet = new FormServlet();
+        List<Map<String, String[]>> rows = BenchmarkSpecs.rows(spec, 1);
+        row = rows.get(0);
+        out = new ByteArrayOutputStream(8192);
+    }
+
+    @Benchmark
+    public byte[] renderForm() {
+        return formServlet.getPage(sessionFactory).getEmpty();
+    }
+
+    @Benchmark
+    public int renderResult() throws IOException {
+        out.reset();
+        formServlet.getPage(sessionFactory).write(out, row, 42);
+        return out.size();
+    }
+}
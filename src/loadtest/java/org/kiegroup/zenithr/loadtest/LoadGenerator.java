@@ -0,0 +1,134 @@
+package org.kiegroup.zenithr.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests to one target for a fixed time and records their latency in nanoseconds.
+ * <p>
+ * The closed loop keeps a fixed number of requests in flight, each thread sending the next as soon as the last one
+ * returns. A stall holds back the requests that would have been sent meanwhile, so its latencies are corrected for
+ * coordinated omission: each sample also records the samples missed, at the mean latency of the warm-up.
+ * <p>
+ * The open loop sends at a constant rate whatever the response times. Request <code>n</code> is due <code>n</code>
+ * periods after the start, and its latency is measured from when it was due, so time spent queued behind slow
+ * requests counts as it would for real clients.
+ */
+class LoadGenerator {
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toNanos(10);
+
+    interface Target {
+        /**
+         * Sends the request for this row and reads the whole response.
+         *
+         * @return whether the response was a success
+         */
+        boolean send(int row) throws IOException;
+    }
+
+    static class Result {
+        final Histogram histogram;
+        final long requests;
+        final long errors;
+        final long nanos;
+
+        Result(Histogram histogram, long requests, long errors, long nanos) {
+            this.histogram = histogram;
+            this.requests = requests;
+            this.errors = errors;
+            this.nanos = nanos;
+        }
+
+        double getThroughput() {
+            return requests * 1e9 / nanos;
+        }
+    }
+
+    private final Target target;
+    private final int rows;
+
+    LoadGenerator(Target target, int rows) {
+        this.target = target;
+        this.rows = rows;
+    }
+
+    /**
+     * Runs the closed loop for the warm-up time, then again for the measured time, correcting the measured latencies
+     * with the mean latency of the warm-up as the expected interval between requests.
+     */
+    Result closedLoop(int threads, long warmupNanos, long durationNanos) throws InterruptedException {
+        Result warmup = run(threads, warmupNanos, 0, 0);
+        long expectedInterval = warmup.histogram.getTotalCount() == 0 ? 0 : (long) warmup.histogram.getMean();
+        return run(threads, durationNanos, 0, expectedInterval);
+    }
+
+    /**
+     * Runs the open loop at the given rate for the warm-up time, then again for the measured time. The threads only
+     * bound how many requests can be in flight; when all are busy, due requests wait and their latency grows.
+     */
+    Result openLoop(int threads, double rate, long warmupNanos, long durationNanos) throws InterruptedException {
+        long period = (long) (1e9 / rate);
+        run(threads, warmupNanos, period, 0);
+        return run(threads, durationNanos, period, 0);
+    }
+
+    private Result run(int threads, long durationNanos, long period, long expectedInterval) throws InterruptedException {
+        AtomicLong sequence = new AtomicLong();
+        AtomicLong sent = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        List<Histogram> histograms = new ArrayList<>(threads);
+        List<Thread> workers = new ArrayList<>(threads);
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        for (int index = 0; index < threads; index++) {
+            Histogram histogram = new Histogram(HIGHEST_LATENCY, 3);
+            histograms.add(histogram);
+            Thread worker = new Thread(() -> {
+                while (true) {
+                    long next = sequence.getAndIncrement();
+                    long due = period > 0 ? start + next * period : System.nanoTime();
+                    if (due >= end) {
+                        break;
+                    }
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    boolean success;
+                    try {
+                        success = target.send((int) (next % rows));
+                    } catch (IOException e) {
+                        success = false;
+                    }
+                    long latency = Math.min(System.nanoTime() - due, HIGHEST_LATENCY);
+                    sent.incrementAndGet();
+                    if (!success) {
+                        errors.incrementAndGet();
+                    }
+                    if (expectedInterval > 0) {
+                        histogram.recordValueWithExpectedInterval(latency, expectedInterval);
+                    } else {
+                        histogram.recordValue(latency);
+                    }
+                }
+            }, "zenithr-load-" + index);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - start;
+        Histogram total = new Histogram(HIGHEST_LATENCY, 3);
+        for (Histogram histogram : histograms) {
+            total.add(histogram);
+        }
+        // a corrected histogram also counts the samples it filled in, so requests are counted as they are sent
+        return new Result(total, sent.get(), errors.get(), nanos);
+    }
+}
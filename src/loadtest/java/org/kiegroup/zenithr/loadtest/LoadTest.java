@@ -0,0 +1,249 @@
+package org.kiegroup.zenithr.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.kiegroup.zenithr.drools.BenchmarkSpecs;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonWriter;
+import javax.json.stream.JsonGenerator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the packaged service over HTTP. Starts the Thorntail uberjar with the benchmark specs of
+ * {@link BenchmarkSpecs} in a spec directory, waits until it reports healthy, then drives the JSON endpoint
+ * (<code>GET /rest/&lt;spec&gt;</code>) and the form (<code>POST /&lt;spec&gt;</code>) of each spec with a closed loop
+ * and an open loop, and writes the latency percentiles and throughput of every run as a JSON report:
+ * <pre>
+ * mvn -P loadtest verify -DskipTests [-Dzenithr.loadtest.specs=grades,wide -Dzenithr.loadtest.rate=2000]
+ * </pre>
+ * System properties tune the run:
+ * <ul>
+ * <li><code>zenithr.loadtest.jar</code>: the uberjar to start</li>
+ * <li><code>zenithr.loadtest.url</code>: the base URL of a service that is already running, instead of starting one;
+ * it must serve the specs under their benchmark names</li>
+ * <li><code>zenithr.loadtest.specs</code>: comma-separated benchmark specs, all by default</li>
+ * <li><code>zenithr.loadtest.targets</code>: <code>rest</code>, <code>form</code> or both, the default</li>
+ * <li><code>zenithr.loadtest.warmup</code> and <code>zenithr.loadtest.duration</code>: seconds of each run spent
+ * warming up and measuring, 10 and 30 by default</li>
+ * <li><code>zenithr.loadtest.threads</code>: requests in flight in the closed loop, 16 by default</li>
+ * <li><code>zenithr.loadtest.rate</code>: requests per second in the open loop, 1000 by default</li>
+ * <li><code>zenithr.loadtest.report</code>: where to write the report</li>
+ * </ul>
+ * Runs use the same generated rows every time, so reports of two releases can be compared line by line.
+ */
+public class LoadTest {
+    private static final int ROWS = 1024;
+    private static final int OPEN_LOOP_THREADS = 256;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99_9", "p99_99"};
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("zenithr.loadtest.url");
+        String[] specs = System.getProperty("zenithr.loadtest.specs", String.join(",", BenchmarkSpecs.NAMES)).split(",");
+        String[] targets = System.getProperty("zenithr.loadtest.targets", "rest,form").split(",");
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.getLong("zenithr.loadtest.warmup", 10L));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.getLong("zenithr.loadtest.duration", 30L));
+        int threads = Integer.getInteger("zenithr.loadtest.threads", 16);
+        double rate = Double.parseDouble(System.getProperty("zenithr.loadtest.rate", "1000"));
+        Path report = Paths.get(System.getProperty("zenithr.loadtest.report", "target/loadtest-report.json"));
+        // keep a connection alive for every thread instead of the default five
+        System.setProperty("http.maxConnections", String.valueOf(Math.max(threads, OPEN_LOOP_THREADS)));
+
+        Process server = null;
+        try {
+            if (url == null) {
+                url = "http://localhost:" + Integer.getInteger("zenithr.loadtest.port", 8080);
+                server = start(Paths.get(System.getProperty("zenithr.loadtest.jar", "target/zenithr-thorntail.jar")), specs, url);
+            }
+            JsonArrayBuilder results = Json.createArrayBuilder();
+            for (String spec : specs) {
+                List<String> rows = getRows(spec);
+                for (String target : targets) {
+                    LoadGenerator generator = new LoadGenerator(getTarget(url, spec, target, rows), rows.size());
+                    System.out.println(String.format("Running closed loop on %s %s with %d threads", target, spec, threads));
+                    LoadGenerator.Result closed = generator.closedLoop(threads, warmupNanos, durationNanos);
+                    results.add(toJson(spec, target, closed).add("mode", "closed").add("threads", threads));
+                    System.out.println(String.format("Running open loop on %s %s at %.0f requests per second", target, spec, rate));
+                    LoadGenerator.Result open = generator.openLoop(OPEN_LOOP_THREADS, rate, warmupNanos, durationNanos);
+                    results.add(toJson(spec, target, open).add("mode", "open").add("rate", rate));
+                }
+            }
+            JsonObjectBuilder json = Json.createObjectBuilder()
+                    .add("timestamp", Instant.now().toString())
+                    .add("java", System.getProperty("java.version"))
+                    .add("processors", Runtime.getRuntime().availableProcessors())
+                    .add("url", url)
+                    .add("warmupSeconds", TimeUnit.NANOSECONDS.toSeconds(warmupNanos))
+                    .add("durationSeconds", TimeUnit.NANOSECONDS.toSeconds(durationNanos))
+                    .add("results", results);
+            if (report.getParent() != null) {
+                Files.createDirectories(report.getParent());
+            }
+            Map<String, Boolean> config = Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true);
+            try (Writer writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8);
+                 JsonWriter jsonWriter = Json.createWriterFactory(config).createWriter(writer)) {
+                jsonWriter.writeObject(json.build());
+            }
+            System.out.println("Wrote load test report to " + report.toAbsolutePath());
+        } finally {
+            if (server != null) {
+                server.destroy();
+                server.waitFor(30, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Starts the uberjar with the specs as named services, the first also as the default spec, and waits until the
+     * health check passes, which includes warming up the default spec.
+     */
+    private static Process start(Path jar, String[] specs, String url) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(jar)) {
+            throw new IllegalStateException("No uberjar at " + jar.toAbsolutePath() + ", package the project first");
+        }
+        Path specDir = Files.createTempDirectory("zenithr-loadtest");
+        for (String spec : specs) {
+            Files.write(specDir.resolve(spec + ".json"), BenchmarkSpecs.get(spec, "auto").getBytes(StandardCharsets.UTF_8));
+        }
+        Path log = jar.toAbsolutePath().resolveSibling("loadtest-server.log");
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Dthorntail.http.port=" + new URL(url).getPort());
+        command.add("-Dzenithr.spec.dir=" + specDir.toAbsolutePath());
+        command.add("-DGET=" + BenchmarkSpecs.get(specs[0], "auto"));
+        command.add("-jar");
+        command.add(jar.toAbsolutePath().toString());
+        Process server = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        System.out.println("Started " + jar + ", logging to " + log);
+
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+        while (!isHealthy(url)) {
+            if (!server.isAlive()) {
+                throw new IllegalStateException("Server exited with " + server.exitValue() + ", see " + log);
+            }
+            if (System.nanoTime() > deadline) {
+                server.destroy();
+                throw new IllegalStateException("Server did not become healthy in time, see " + log);
+            }
+            Thread.sleep(500);
+        }
+        return server;
+    }
+
+    private static boolean isHealthy(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url + "/health").openConnection();
+            return isSuccess(read(connection));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the URL-encoded parameters of each benchmark row, which serve as both query strings and form bodies
+     */
+    private static List<String> getRows(String spec) throws UnsupportedEncodingException {
+        List<String> rows = new ArrayList<>(ROWS);
+        for (Map<String, String[]> row : BenchmarkSpecs.rows(spec, ROWS)) {
+            StringBuilder parameters = new StringBuilder();
+            for (Map.Entry<String, String[]> entry : row.entrySet()) {
+                if (parameters.length() > 0) {
+                    parameters.append('&');
+                }
+                parameters.append(URLEncoder.encode(entry.getKey(), "UTF-8")).append('=').append(URLEncoder.encode(entry.getValue()[0], "UTF-8"));
+            }
+            rows.add(parameters.toString());
+        }
+        return rows;
+    }
+
+    private static LoadGenerator.Target getTarget(String url, String spec, String target, List<String> rows) {
+        switch (target) {
+            case "rest":
+                return row -> {
+                    HttpURLConnection connection = (HttpURLConnection) new URL(url + "/rest/" + spec + "?" + rows.get(row)).openConnection();
+                    return isSuccess(read(connection));
+                };
+            case "form":
+                return row -> {
+                    HttpURLConnection connection = (HttpURLConnection) new URL(url + "/" + spec).openConnection();
+                    connection.setRequestMethod("POST");
+                    connection.setDoOutput(true);
+                    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+                    try (OutputStream body = connection.getOutputStream()) {
+                        body.write(rows.get(row).getBytes(StandardCharsets.UTF_8));
+                    }
+                    return isSuccess(read(connection));
+                };
+            default:
+                throw new IllegalArgumentException("Unknown load test target: " + target);
+        }
+    }
+
+    private static boolean isSuccess(int status) {
+        // a request where no rule matched has no output, and is answered with 204
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * Reads the whole response, so the connection goes back to the keep-alive pool for the next request.
+     *
+     * @return the response status
+     */
+    private static int read(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (body != null) {
+            try (InputStream in = body) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // discard
+                }
+            }
+        }
+        return status;
+    }
+
+    /**
+     * @return the counts, throughput and latency percentiles of a run, in microseconds
+     */
+    private static JsonObjectBuilder toJson(String spec, String target, LoadGenerator.Result result) {
+        Histogram histogram = result.histogram;
+        JsonObjectBuilder latency = Json.createObjectBuilder();
+        for (int index = 0; index < PERCENTILES.length; index++) {
+            latency.add(PERCENTILE_NAMES[index], toMicros(histogram.getValueAtPercentile(PERCENTILES[index])));
+        }
+        latency.add("max", toMicros(histogram.getMaxValue()));
+        latency.add("mean", toMicros((long) histogram.getMean()));
+        return Json.createObjectBuilder()
+                .add("spec", spec)
+                .add("target", target)
+                .add("requests", result.requests)
+                .add("errors", result.errors)
+                .add("throughput", Math.round(result.getThroughput() * 10) / 10.0)
+                .add("latencyMicros", latency);
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
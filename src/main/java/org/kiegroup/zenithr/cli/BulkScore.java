@@ -0,0 +1,85 @@
+package org.kiegroup.zenithr.cli;
+
+import org.kiegroup.zenithr.drools.BulkScorer;
+import org.kiegroup.zenithr.drools.SessionFactory;
+import org.kiegroup.zenithr.drools.SpecFileWatcher;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Scores an NDJSON or CSV file against a spec outside the server, with the same engine and output as the bulk
+ * endpoint:
+ * <pre>
+ * mvn exec:java -Dexec.mainClass=org.kiegroup.zenithr.cli.BulkScore -Dexec.args="spec.json rows.csv scores.csv"
+ * </pre>
+ * Input and output default to standard in and out, or are read and written there when given as <code>-</code>. The
+ * format follows the input file extension unless <code>--csv</code> or <code>--ndjson</code> is passed. Progress is
+ * reported on standard error; <code>zenithr.bulk.workers</code> and <code>zenithr.bulk.chunk</code> tune parallelism.
+ */
+public class BulkScore {
+
+    public static void main(String[] args) throws IOException {
+        String format = null;
+        String[] paths = new String[3];
+        int count = 0;
+        for (String arg : args) {
+            if (arg.equals("--csv") || arg.equals("--ndjson")) {
+                format = arg.substring(2);
+            } else if (count < paths.length) {
+                paths[count++] = arg;
+            } else {
+                usage();
+                return;
+            }
+        }
+        if (count == 0) {
+            usage();
+            return;
+        }
+        String input = count > 1 ? paths[1] : "-";
+        String output = count > 2 ? paths[2] : "-";
+        BulkScorer.Format bulkFormat = BulkScorer.Format.of(format != null ? format : input);
+
+        // compiling a spec logs to standard out, which would mix the log into scores written there
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        try {
+            SessionFactory sessionFactory = SessionFactory.reload(SpecFileWatcher.read(Paths.get(paths[0])));
+            BulkScorer scorer = BulkScorer.fromSystemProperties(sessionFactory, System.err);
+            try (Reader reader = open(input); Writer writer = create(output, stdout)) {
+                scorer.score(reader, writer, bulkFormat);
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    private static Reader open(String path) throws IOException {
+        if ("-".equals(path)) {
+            return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8);
+    }
+
+    private static Writer create(String path, PrintStream stdout) throws IOException {
+        if ("-".equals(path)) {
+            return new BufferedWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: BulkScore [--csv|--ndjson] <spec.json> [input|-] [output|-]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,253 @@
+package org.kiegroup.zenithr.direct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Evaluates a flat list of rules without the rule engine. Each <code>when</code> and <code>then.output</code> is
+ * compiled once into an expression tree; evaluation walks the rules against a primitive input array and allocates
+ * nothing but the boxed result.
+ * <p>
+ * Results match the generated rules: when several rules match, the one declared last wins, because the rule engine
+ * fires all of them in declaration order and each overwrites the output.
+ * <p>
+ * Specs whose conditions are all ranges over the same numeric input are served from an {@link IntervalIndex}.
+ * <p>
+ * Large batches can also be evaluated a column at a time with {@link #evaluateColumns(double[][], int)}.
+ */
+public class DirectEvaluator {
+    private final Expression[] conditions;
+    private final Expression[] outputs;
+    private final String[] literals;
+    private final String[] names;
+    private final String outputType;
+    private final HitPolicy hitPolicy;
+    private final IntervalIndex intervalIndex;
+
+    private DirectEvaluator(Expression[] conditions, Expression[] outputs, String[] literals, String[] names, String outputType, HitPolicy hitPolicy) {
+        this.conditions = conditions;
+        this.outputs = outputs;
+        this.literals = literals;
+        this.names = names;
+        this.outputType = outputType;
+        this.hitPolicy = hitPolicy;
+        boolean singleWinner = hitPolicy == HitPolicy.LAST || hitPolicy == HitPolicy.FIRST;
+        this.intervalIndex = singleWinner ? IntervalIndex.build(conditions, hitPolicy == HitPolicy.FIRST) : null;
+    }
+
+    /**
+     * @param names        the name of each rule, in declaration order
+     * @param whens        the <code>when</code> expression of each rule, in declaration order
+     * @param thens        the <code>then.output</code> of each rule, in declaration order
+     * @param inputTypeMap spec input names and types, in the slot order of the input arrays passed to evaluate
+     * @throws IllegalArgumentException if any input type, output type or expression is not supported
+     */
+    public static DirectEvaluator compile(List<String> names, List<String> whens, List<String> thens, Map<String, String> inputTypeMap,
+                                          String outputType, HitPolicy hitPolicy) {
+        int size = whens.size();
+        Expression[] conditions = new Expression[size];
+        Expression[] outputs = new Expression[size];
+        String[] literals = new String[size];
+        for (int index = 0; index < size; index++) {
+            conditions[index] = ExpressionParser.parse(whens.get(index), inputTypeMap);
+            if (conditions[index].getType() != Expression.Type.BOOLEAN) {
+                throw new IllegalArgumentException("Condition is not boolean: " + whens.get(index));
+            }
+            switch (outputType) {
+                case "string":
+                    literals[index] = thens.get(index);
+                    break;
+                case "boolean":
+                    outputs[index] = ExpressionParser.parse(thens.get(index), inputTypeMap);
+                    if (outputs[index].getType() != Expression.Type.BOOLEAN) {
+                        throw new IllegalArgumentException("Output is not boolean: " + thens.get(index));
+                    }
+                    break;
+                case "int":
+                case "long":
+                case "double":
+                    outputs[index] = ExpressionParser.parse(thens.get(index), inputTypeMap);
+                    if (outputs[index].getType() == Expression.Type.BOOLEAN) {
+                        throw new IllegalArgumentException("Output is not numeric: " + thens.get(index));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Output of type " + outputType + " is not supported");
+            }
+        }
+        return new DirectEvaluator(conditions, outputs, literals, names.toArray(new String[0]), outputType, hitPolicy);
+    }
+
+    /**
+     * @param inputs one value per spec input, in the order of the input type map this evaluator was compiled with
+     * @return the output of the winning rule, or null if no rule matches; a list of outputs for the collect policy
+     * @throws IllegalStateException if more than one rule matches under the unique policy
+     */
+    public Object evaluate(double[] inputs) {
+        if (intervalIndex != null) {
+            int index = intervalIndex.lookup(inputs);
+            return index < 0 ? null : getOutput(index, inputs);
+        }
+        switch (hitPolicy) {
+            case FIRST:
+                for (int index = 0; index < conditions.length; index++) {
+                    if (conditions[index].evaluateBoolean(inputs)) {
+                        return getOutput(index, inputs);
+                    }
+                }
+                return null;
+            case UNIQUE:
+                return evaluateUnique(inputs);
+            case COLLECT:
+                return evaluateAll(inputs);
+            default:
+                for (int index = conditions.length - 1; index >= 0; index--) {
+                    if (conditions[index].evaluateBoolean(inputs)) {
+                        return getOutput(index, inputs);
+                    }
+                }
+                return null;
+        }
+    }
+
+    private Object evaluateUnique(double[] inputs) {
+        int match = -1;
+        int count = 0;
+        StringJoiner matches = new StringJoiner(", ");
+        for (int index = 0; index < conditions.length; index++) {
+            if (conditions[index].evaluateBoolean(inputs)) {
+                match = index;
+                count++;
+                matches.add(names[index]);
+            }
+        }
+        if (count > 1) {
+            throw new IllegalStateException("More than one rule matched: " + matches);
+        }
+        return match < 0 ? null : getOutput(match, inputs);
+    }
+
+    private List<Object> evaluateAll(double[] inputs) {
+        List<Object> matches = new ArrayList<>();
+        for (int index = 0; index < conditions.length; index++) {
+            if (conditions[index].evaluateBoolean(inputs)) {
+                matches.add(getOutput(index, inputs));
+            }
+        }
+        return Collections.unmodifiableList(matches);
+    }
+
+    /**
+     * Evaluates many rows at once. Each condition runs over whole input columns into a mask of the rows it matches,
+     * the masks are folded into the winning rule of each row, and each winning rule's output then runs over the
+     * columns once. All of it is plain counted loops over primitive arrays, which the JIT unrolls and vectorizes.
+     *
+     * @param columns one column per spec input, in the order of the input type map, with booleans as 0 or 1
+     * @param length  the number of rows, at most the length of each column
+     * @return the output of each row, as {@link #evaluate(double[])} would return it, or null if the rows have to be
+     * evaluated one by one: under the unique and collect policies, or when an integer division by zero in any row
+     * makes column evaluation fail
+     */
+    public Object[] evaluateColumns(double[][] columns, int length) {
+        if (hitPolicy != HitPolicy.LAST && hitPolicy != HitPolicy.FIRST) {
+            return null;
+        }
+        int[] winners = new int[length];
+        Arrays.fill(winners, -1);
+        boolean[] mask = new boolean[length];
+        boolean[] won = new boolean[conditions.length];
+        try {
+            // later masks overwrite earlier ones, so visit the rule that wins a tie last
+            for (int step = 0; step < conditions.length; step++) {
+                int index = hitPolicy == HitPolicy.FIRST ? conditions.length - 1 - step : step;
+                conditions[index].evaluateBooleans(columns, length, mask);
+                for (int row = 0; row < length; row++) {
+                    if (mask[row]) {
+                        winners[row] = index;
+                    }
+                }
+            }
+            for (int row = 0; row < length; row++) {
+                if (winners[row] >= 0) {
+                    won[winners[row]] = true;
+                }
+            }
+            Object[] results = new Object[length];
+            for (int index = 0; index < conditions.length; index++) {
+                if (won[index]) {
+                    setOutputs(index, columns, length, winners, results);
+                }
+            }
+            return results;
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    private void setOutputs(int index, double[][] columns, int length, int[] winners, Object[] results) {
+        switch (outputType) {
+            case "string":
+                for (int row = 0; row < length; row++) {
+                    if (winners[row] == index) {
+                        results[row] = literals[index];
+                    }
+                }
+                break;
+            case "boolean":
+                boolean[] booleans = new boolean[length];
+                outputs[index].evaluateBooleans(columns, length, booleans);
+                for (int row = 0; row < length; row++) {
+                    if (winners[row] == index) {
+                        results[row] = booleans[row];
+                    }
+                }
+                break;
+            case "int":
+            case "long":
+                long[] longs = new long[length];
+                outputs[index].evaluateLongs(columns, length, longs);
+                boolean ints = outputType.equals("int");
+                for (int row = 0; row < length; row++) {
+                    if (winners[row] == index) {
+                        results[row] = ints ? (Object) (int) longs[row] : (Object) longs[row];
+                    }
+                }
+                break;
+            default:
+                double[] doubles = new double[length];
+                outputs[index].evaluateDoubles(columns, length, doubles);
+                for (int row = 0; row < length; row++) {
+                    if (winners[row] == index) {
+                        results[row] = doubles[row];
+                    }
+                }
+        }
+    }
+
+    /**
+     * @return whether all conditions are ranges over one numeric input, so the matching rule is found by binary search
+     * instead of testing every rule
+     */
+    public boolean isIndexed() {
+        return intervalIndex != null;
+    }
+
+    private Object getOutput(int index, double[] inputs) {
+        switch (outputType) {
+            case "string":
+                return literals[index];
+            case "boolean":
+                return outputs[index].evaluateBoolean(inputs);
+            case "int":
+                return (int) outputs[index].evaluateLong(inputs);
+            case "long":
+                return outputs[index].evaluateLong(inputs);
+            default:
+                return outputs[index].evaluateDouble(inputs);
+        }
+    }
+}
@@ -0,0 +1,824 @@
+package org.kiegroup.zenithr.direct;
+
+import java.util.Arrays;
+
+/**
+ * Node of a compiled expression tree. Inputs are read from a primitive array holding one slot per spec input, with
+ * booleans stored as 0 or 1. Integral arithmetic follows Java semantics, so <code>7 / 2</code> is 3 just like it is in
+ * a generated rule consequence.
+ */
+public abstract class Expression {
+
+    public enum Type {
+        BOOLEAN, LONG, DOUBLE
+    }
+
+    private final Type type;
+
+    Expression(Type type) {
+        this.type = type;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public boolean evaluateBoolean(double[] inputs) {
+        throw new UnsupportedOperationException(type + " expression is not boolean");
+    }
+
+    public long evaluateLong(double[] inputs) {
+        return (long) evaluateDouble(inputs);
+    }
+
+    public double evaluateDouble(double[] inputs) {
+        throw new UnsupportedOperationException(type + " expression is not numeric");
+    }
+
+    /**
+     * Evaluates this expression for the first <code>length</code> rows of the input columns, one column per spec input
+     * in slot order, into <code>out</code>. Each node runs one loop over the rows, so column evaluation is a handful of
+     * tight loops rather than a tree walk per row.
+     */
+    void evaluateBooleans(double[][] columns, int length, boolean[] out) {
+        throw new UnsupportedOperationException(type + " expression is not boolean");
+    }
+
+    void evaluateLongs(double[][] columns, int length, long[] out) {
+        double[] values = new double[length];
+        evaluateDoubles(columns, length, values);
+        for (int row = 0; row < length; row++) {
+            out[row] = (long) values[row];
+        }
+    }
+
+    void evaluateDoubles(double[][] columns, int length, double[] out) {
+        throw new UnsupportedOperationException(type + " expression is not numeric");
+    }
+
+    boolean isConstant() {
+        return false;
+    }
+
+    /**
+     * @return the input slot this expression reads directly, or -1 if it is not a plain input
+     */
+    int getSlot() {
+        return -1;
+    }
+
+    /**
+     * @return the range of one input this condition accepts, or null unless the condition is a conjunction of
+     * comparisons between that input and constants
+     */
+    Interval getInterval() {
+        return null;
+    }
+
+    static Expression constant(boolean value) {
+        return new BooleanConstant(value);
+    }
+
+    static Expression constant(long value) {
+        return new LongConstant(value);
+    }
+
+    static Expression constant(double value) {
+        return new DoubleConstant(value);
+    }
+
+    static Expression variable(int slot, Type type) {
+        switch (type) {
+            case BOOLEAN:
+                return new BooleanVariable(slot);
+            case LONG:
+                return new LongVariable(slot);
+            default:
+                return new DoubleVariable(slot);
+        }
+    }
+
+    static Expression negate(Expression operand) {
+        Expression expression = operand.getType() == Type.LONG ? new LongNegate(operand) : new DoubleNegate(operand);
+        return fold(expression, operand);
+    }
+
+    static Expression not(Expression operand) {
+        return fold(new Not(operand), operand);
+    }
+
+    static Expression and(Expression left, Expression right) {
+        return fold(new And(left, right), left, right);
+    }
+
+    static Expression or(Expression left, Expression right) {
+        return fold(new Or(left, right), left, right);
+    }
+
+    static Expression arithmetic(char operator, Expression left, Expression right) {
+        Expression expression;
+        if (left.getType() == Type.LONG && right.getType() == Type.LONG) {
+            expression = new LongArithmetic(operator, left, right);
+        } else {
+            expression = new DoubleArithmetic(operator, left, right);
+        }
+        return fold(expression, left, right);
+    }
+
+    static Expression compare(Comparison comparison, Expression left, Expression right) {
+        Expression expression;
+        if (left.getType() == Type.BOOLEAN) {
+            expression = new BooleanEquality(comparison, left, right);
+        } else if (left.getType() == Type.LONG && right.getType() == Type.LONG) {
+            expression = new LongComparison(comparison, left, right);
+        } else {
+            expression = new DoubleComparison(comparison, left, right);
+        }
+        return fold(expression, left, right);
+    }
+
+    private static Interval getComparisonInterval(Comparison comparison, Expression left, Expression right) {
+        if (left.getSlot() >= 0 && right.isConstant()) {
+            return Interval.of(left.getSlot(), comparison, right.evaluateDouble(null));
+        } else if (right.getSlot() >= 0 && left.isConstant()) {
+            return Interval.of(right.getSlot(), comparison.flip(), left.evaluateDouble(null));
+        }
+        return null;
+    }
+
+    /**
+     * Replaces an expression whose operands are all constants with its value, so literal sub-expressions cost nothing
+     * per evaluation.
+     */
+    private static Expression fold(Expression expression, Expression... operands) {
+        for (Expression operand : operands) {
+            if (!operand.isConstant()) {
+                return expression;
+            }
+        }
+        switch (expression.getType()) {
+            case BOOLEAN:
+                return constant(expression.evaluateBoolean(null));
+            case LONG:
+                return constant(expression.evaluateLong(null));
+            default:
+                return constant(expression.evaluateDouble(null));
+        }
+    }
+
+    enum Comparison {
+        EQ, NE, LT, LE, GT, GE;
+
+        Comparison flip() {
+            switch (this) {
+                case LT:
+                    return GT;
+                case LE:
+                    return GE;
+                case GT:
+                    return LT;
+                case GE:
+                    return LE;
+                default:
+                    return this;
+            }
+        }
+
+        boolean test(int compared) {
+            switch (this) {
+                case EQ:
+                    return compared == 0;
+                case NE:
+                    return compared != 0;
+                case LT:
+                    return compared < 0;
+                case LE:
+                    return compared <= 0;
+                case GT:
+                    return compared > 0;
+                default:
+                    return compared >= 0;
+            }
+        }
+    }
+
+    private static class BooleanConstant extends Expression {
+        private final boolean value;
+
+        BooleanConstant(boolean value) {
+            super(Type.BOOLEAN);
+            this.value = value;
+        }
+
+        @Override
+        public boolean evaluateBoolean(double[] inputs) {
+            return value;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+
+        @Override
+        void evaluateBooleans(double[][] columns, int length, boolean[] out) {
+            Arrays.fill(out, 0, length, value);
+        }
+    }
+
+    private static class LongConstant extends Expression {
+        private final long value;
+
+        LongConstant(long value) {
+            super(Type.LONG);
+            this.value = value;
+        }
+
+        @Override
+        public long evaluateLong(double[] inputs) {
+            return value;
+        }
+
+        @Override
+        public double evaluateDouble(double[] inputs) {
+            return value;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+
+        @Override
+        void evaluateLongs(double[][] columns, int length, long[] out) {
+            Arrays.fill(out, 0, length, value);
+        }
+
+        @Override
+        void evaluateDoubles(double[][] columns, int length, double[] out) {
+            Arrays.fill(out, 0, length, value);
+        }
+    }
+
+    private static class DoubleConstant extends Expression {
+        private final double value;
+
+        DoubleConstant(double value) {
+            super(Type.DOUBLE);
+            this.value = value;
+        }
+
+        @Override
+        public double evaluateDouble(double[] inputs) {
+            return value;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+
+        @Override
+        void evaluateDoubles(double[][] columns, int length, double[] out) {
+            Arrays.fill(out, 0, length, value);
+        }
+    }
+
+    private static class BooleanVariable extends Expression {
+        private final int slot;
+
+        BooleanVariable(int slot) {
+            super(Type.BOOLEAN);
+            this.slot = slot;
+        }
+
+        @Override
+        int getSlot() {
+            return slot;
+        }
+
+        @Override
+        public boolean evaluateBoolean(double[] inputs) {
+            return inputs[slot] != 0;
+        }
+
+        @Override
+        void evaluateBooleans(double[][] columns, int length, boolean[] out) {
+            double[] column = columns[slot];
+            for (int row = 0; row < length; row++) {
+                out[row] = column[row] != 0;
+            }
+        }
+    }
+
+    private static class LongVariable extends Expression {
+        private final int slot;
+
+        LongVariable(int slot) {
+            super(Type.LONG);
+            this.slot = slot;
+        }
+
+        @Override
+        int getSlot() {
+            return slot;
+        }
+
+        @Override
+        public long evaluateLong(double[] inputs) {
+            return (long) inputs[slot];
+        }
+
+        @Override
+        public double evaluateDouble(double[] inputs) {
+            return inputs[slot];
+        }
+
+        @Override
+        void evaluateLongs(double[][] columns, int length, long[] out) {
+            double[] column = columns[slot];
+            for (int row = 0; row < length; row++) {
+                out[row] = (long) column[row];
+            }
+        }
+
+        @Override
+        void evaluateDoubles(double[][] columns, int length, double[] out) {
+            System.arraycopy(columns[slot], 0, out, 0, length);
+        }
+    }
+
+    private static class DoubleVariable extends Expression {
+        private final int slot;
+
+        DoubleVariable(int slot) {
+            super(Type.DOUBLE);
+            this.slot = slot;
+        }
+
+        @Override
+        int getSlot() {
+            return slot;
+        }
+
+        @Override
+        public double evaluateDouble(double[] inputs) {
+            return inputs[slot];
+        }
+
+        @Override
+        void evaluateDoubles(double[][] columns, int length, double[] out) {
+            System.arraycopy(columns[slot], 0, out, 0, length);
+        }
+    }
+
+    private static class LongNegate extends Expression {
+        private final Expression operand;
+
+        LongNegate(Expression operand) {
+            super(Type.LONG);
+            this.operand = operand;
+        }
+
+        @Override
+        public long evaluateLong(double[] inputs) {
+            return -operand.evaluateLong(inputs);
+        }
+
+        @Override
+        public double evaluateDouble(double[] inputs) {
+            return evaluateLong(inputs);
+        }
+
+        @Override
+        void evaluateLongs(double[][] columns, int length, long[] out) {
+            operand.evaluateLongs(columns, length, out);
+            for (int row = 0; row < length; row++) {
+                out[row] = -out[row];
+            }
+        }
+
+        @Override
+        void evaluateDoubles(double[][] columns, int length, double[] out) {
+            long[] values = new long[length];
+            evaluateLongs(columns, length, values);
+            for (int row = 0; row < length; row++) {
+                out[row] = values[row];
+            }
+        }
+    }
+
+    private static class DoubleNegate extends Expression {
+        private final Expression operand;
+
+        DoubleNegate(Expression operand) {
+            super(Type.DOUBLE);
+            this.operand = operand;
+        }
+
+        @Override
+        public double evaluateDouble(double[] inputs) {
+            return -operand.evaluateDouble(inputs);
+        }
+
+        @Override
+        void evaluateDoubles(double[][] columns, int length, double[] out) {
+            operand.evaluateDoubles(columns, length, out);
+            for (int row = 0; row < length; row++) {
+                out[row] = -out[row];
+            }
+        }
+    }
+
+    private static class Not extends Expression {
+        private final Expression operand;
+
+        Not(Expression operand) {
+            super(Type.BOOLEAN);
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean evaluateBoolean(double[] inputs) {
+            return !operand.evaluateBoolean(inputs);
+        }
+
+        @Override
+        void evaluateBooleans(double[][] columns, int length, boolean[] out) {
+            operand.evaluateBooleans(columns, length, out);
+            for (int row = 0; row < length; row++) {
+                out[row] = !out[row];
+            }
+        }
+    }
+
+    private static class And extends Expression {
+        private final Expression left;
+        private final Expression right;
+
+        And(Expression left, Expression right) {
+            super(Type.BOOLEAN);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evaluateBoolean(double[] inputs) {
+            return left.evaluateBoolean(inputs) && right.evaluateBoolean(inputs);
+        }
+
+        @Override
+        Interval getInterval() {
+            Interval interval = left.getInterval();
+            return interval == null ? null : interval.intersect(right.getInterval());
+        }
+
+        @Override
+        void evaluateBooleans(double[][] columns, int length, boolean[] out) {
+            boolean[] rightValues = new boolean[length];
+            left.evaluateBooleans(columns, length, out);
+            right.evaluateBooleans(columns, length, rightValues);
+            for (int row = 0; row < length; row++) {
+                out[row] &= rightValues[row];
+            }
+        }
+    }
+
+    private static class Or extends Expression {
+        private final Expression left;
+        private final Expression right;
+
+        Or(Expression left, Expression right) {
+            super(Type.BOOLEAN);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evaluateBoolean(double[] inputs) {
+            return left.evaluateBoolean(inputs) || right.evaluateBoolean(inputs);
+        }
+
+        @Override
+        void evaluateBooleans(double[][] columns, int length, boolean[] out) {
+            boolean[] rightValues = new boolean[length];
+            left.evaluateBooleans(columns, length, out);
+            right.evaluateBooleans(columns, length, rightValues);
+            for (int row = 0; row < length; row++) {
+                out[row] |= rightValues[row];
+            }
+        }
+    }
+
+    private static class LongArithmetic extends Expression {
+        private final char operator;
+        private final Expression left;
+        private final Expression right;
+
+        LongArithmetic(char operator, Expression left, Expression right) {
+            super(Type.LONG);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public long evaluateLong(double[] inputs) {
+            long l = left.evaluateLong(inputs);
+            long r = right.evaluateLong(inputs);
+            switch (operator) {
+                case '+':
+                    return l + r;
+                case '-':
+                    return l - r;
+                case '*':
+                    return l * r;
+                case '/':
+                    return l / r;
+                default:
+                    return l % r;
+            }
+        }
+
+        @Override
+        public double evaluateDouble(double[] inputs) {
+            return evaluateLong(inputs);
+        }
+
+        /**
+         * @throws ArithmeticException if any row divides by zero, even one whose rule does not match
+         */
+        @Override
+        void evaluateLongs(double[][] columns, int length, long[] out) {
+            long[] rightValues = new long[length];
+            left.evaluateLongs(columns, length, out);
+            right.evaluateLongs(columns, length, rightValues);
+            switch (operator) {
+                case '+':
+                    for (int row = 0; row < length; row++) {
+                        out[row] += rightValues[row];
+                    }
+                    break;
+                case '-':
+                    for (int row = 0; row < length; row++) {
+                        out[row] -= rightValues[row];
+                    }
+                    break;
+                case '*':
+                    for (int row = 0; row < length; row++) {
+                        out[row] *= rightValues[row];
+                    }
+                    break;
+                case '/':
+                    for (int row = 0; row < length; row++) {
+                        out[row] /= rightValues[row];
+                    }
+                    break;
+                default:
+                    for (int row = 0; row < length; row++) {
+                        out[row] %= rightValues[row];
+                    }
+            }
+        }
+
+        @Override
+        void evaluateDoubles(double[][] columns, int length, double[] out) {
+            long[] values = new long[length];
+            evaluateLongs(columns, length, values);
+            for (int row = 0; row < length; row++) {
+                out[row] = values[row];
+            }
+        }
+    }
+
+    private static class DoubleArithmetic extends Expression {
+        private final char operator;
+        private final Expression left;
+        private final Expression right;
+
+        DoubleArithmetic(char operator, Expression left, Expression right) {
+            super(Type.DOUBLE);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evaluateDouble(double[] inputs) {
+            double l = left.evaluateDouble(inputs);
+            double r = right.evaluateDouble(inputs);
+            switch (operator) {
+                case '+':
+                    return l + r;
+                case '-':
+                    return l - r;
+                case '*':
+                    return l * r;
+                case '/':
+                    return l / r;
+                default:
+                    return l % r;
+            }
+        }
+
+        @Override
+        void evaluateDoubles(double[][] columns, int length, double[] out) {
+            double[] rightValues = new double[length];
+            left.evaluateDoubles(columns, length, out);
+            right.evaluateDoubles(columns, length, rightValues);
+            switch (operator) {
+                case '+':
+                    for (int row = 0; row < length; row++) {
+                        out[row] += rightValues[row];
+                    }
+                    break;
+                case '-':
+                    for (int row = 0; row < length; row++) {
+                        out[row] -= rightValues[row];
+                    }
+                    break;
+                case '*':
+                    for (int row = 0; row < length; row++) {
+                        out[row] *= rightValues[row];
+                    }
+                    break;
+                case '/':
+                    for (int row = 0; row < length; row++) {
+                        out[row] /= rightValues[row];
+                    }
+                    break;
+                default:
+                    for (int row = 0; row < length; row++) {
+                        out[row] %= rightValues[row];
+                    }
+            }
+        }
+    }
+
+    private static class LongComparison extends Expression {
+        private final Comparison comparison;
+        private final Expression left;
+        private final Expression right;
+
+        LongComparison(Comparison comparison, Expression left, Expression right) {
+            super(Type.BOOLEAN);
+            this.comparison = comparison;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Interval getInterval() {
+            return getComparisonInterval(comparison, left, right);
+        }
+
+        @Override
+        public boolean evaluateBoolean(double[] inputs) {
+            return comparison.test(Long.compare(left.evaluateLong(inputs), right.evaluateLong(inputs)));
+        }
+
+        @Override
+        void evaluateBooleans(double[][] columns, int length, boolean[] out) {
+            long[] leftValues = new long[length];
+            long[] rightValues = new long[length];
+            left.evaluateLongs(columns, length, leftValues);
+            right.evaluateLongs(columns, length, rightValues);
+            switch (comparison) {
+                case EQ:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] == rightValues[row];
+                    }
+                    break;
+                case NE:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] != rightValues[row];
+                    }
+                    break;
+                case LT:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] < rightValues[row];
+                    }
+                    break;
+                case LE:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] <= rightValues[row];
+                    }
+                    break;
+                case GT:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] > rightValues[row];
+                    }
+                    break;
+                default:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] >= rightValues[row];
+                    }
+            }
+        }
+    }
+
+    private static class DoubleComparison extends Expression {
+        private final Comparison comparison;
+        private final Expression left;
+        private final Expression right;
+
+        DoubleComparison(Comparison comparison, Expression left, Expression right) {
+            super(Type.BOOLEAN);
+            this.comparison = comparison;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Interval getInterval() {
+            return getComparisonInterval(comparison, left, right);
+        }
+
+        @Override
+        public boolean evaluateBoolean(double[] inputs) {
+            double l = left.evaluateDouble(inputs);
+            double r = right.evaluateDouble(inputs);
+            switch (comparison) {
+                case EQ:
+                    return l == r;
+                case NE:
+                    return l != r;
+                case LT:
+                    return l < r;
+                case LE:
+                    return l <= r;
+                case GT:
+                    return l > r;
+                default:
+                    return l >= r;
+            }
+        }
+
+        @Override
+        void evaluateBooleans(double[][] columns, int length, boolean[] out) {
+            double[] leftValues = new double[length];
+            double[] rightValues = new double[length];
+            left.evaluateDoubles(columns, length, leftValues);
+            right.evaluateDoubles(columns, length, rightValues);
+            switch (comparison) {
+                case EQ:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] == rightValues[row];
+                    }
+                    break;
+                case NE:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] != rightValues[row];
+                    }
+                    break;
+                case LT:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] < rightValues[row];
+                    }
+                    break;
+                case LE:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] <= rightValues[row];
+                    }
+                    break;
+                case GT:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] > rightValues[row];
+                    }
+                    break;
+                default:
+                    for (int row = 0; row < length; row++) {
+                        out[row] = leftValues[row] >= rightValues[row];
+                    }
+            }
+        }
+    }
+
+    private static class BooleanEquality extends Expression {
+        private final boolean equal;
+        private final Expression left;
+        private final Expression right;
+
+        BooleanEquality(Comparison comparison, Expression left, Expression right) {
+            super(Type.BOOLEAN);
+            this.equal = comparison == Comparison.EQ;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evaluateBoolean(double[] inputs) {
+            return (left.evaluateBoolean(inputs) == right.evaluateBoolean(inputs)) == equal;
+        }
+
+        @Override
+        void evaluateBooleans(double[][] columns, int length, boolean[] out) {
+            boolean[] rightValues = new boolean[length];
+            left.evaluateBooleans(columns, length, out);
+            right.evaluateBooleans(columns, length, rightValues);
+            for (int row = 0; row < length; row++) {
+                out[row] = (out[row] == rightValues[row]) == equal;
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package org.kiegroup.zenithr.direct;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recursive-descent parser for the subset of Java expression syntax that specs typically use in <code>when</code> and
+ * <code>then.output</code>: numeric and boolean literals, input names, parentheses, and the arithmetic, comparison and
+ * logical operators. Anything else is rejected with an {@link IllegalArgumentException}, so callers can fall back to
+ * the rule engine.
+ */
+public class ExpressionParser {
+    private final String text;
+    private final Map<String, Integer> slots;
+    private final Map<String, Expression.Type> types;
+    private int position;
+
+    private ExpressionParser(String text, Map<String, Integer> slots, Map<String, Expression.Type> types) {
+        this.text = text;
+        this.slots = slots;
+        this.types = types;
+    }
+
+    /**
+     * @param inputTypeMap spec input names and types, in slot order; only boolean and numeric inputs are supported
+     */
+    public static Expression parse(String text, Map<String, String> inputTypeMap) {
+        Map<String, Integer> slots = new HashMap<>();
+        Map<String, Expression.Type> types = new HashMap<>();
+        for (Map.Entry<String, String> entry : inputTypeMap.entrySet()) {
+            slots.put(entry.getKey(), slots.size());
+            types.put(entry.getKey(), getType(entry.getValue()));
+        }
+        ExpressionParser parser = new ExpressionParser(text, slots, types);
+        Expression expression = parser.parseOr();
+        parser.skipWhitespace();
+        if (parser.position < text.length()) {
+            throw parser.error("Unexpected '" + text.charAt(parser.position) + "'");
+        }
+        return expression;
+    }
+
+    static Expression.Type getType(String inputType) {
+        switch (inputType) {
+            case "boolean":
+                return Expression.Type.BOOLEAN;
+            case "int":
+                return Expression.Type.LONG;
+            case "double":
+                return Expression.Type.DOUBLE;
+            case "long":
+                // inputs are held as doubles, which cannot represent every long above 2^53
+                throw new IllegalArgumentException("Inputs of type long are not supported, values above 2^53 would lose precision");
+            default:
+                throw new IllegalArgumentException("Inputs of type " + inputType + " are not supported");
+        }
+    }
+
+    private Expression parseOr() {
+        Expression left = parseAnd();
+        while (accept("||")) {
+            left = Expression.or(requireBoolean(left), requireBoolean(parseAnd()));
+        }
+        return left;
+    }
+
+    private Expression parseAnd() {
+        Expression left = parseEquality();
+        while (accept("&&")) {
+            left = Expression.and(requireBoolean(left), requireBoolean(parseEquality()));
+        }
+        return left;
+    }
+
+    private Expression parseEquality() {
+        Expression left = parseRelational();
+        while (true) {
+            Expression.Comparison comparison;
+            if (accept("==")) {
+                comparison = Expression.Comparison.EQ;
+            } else if (accept("!=")) {
+                comparison = Expression.Comparison.NE;
+            } else {
+                return left;
+            }
+            Expression right = parseRelational();
+            if ((left.getType() == Expression.Type.BOOLEAN) != (right.getType() == Expression.Type.BOOLEAN)) {
+                throw error("Cannot compare boolean with number");
+            }
+            left = Expression.compare(comparison, left, right);
+        }
+    }
+
+    private Expression parseRelational() {
+        Expression left = parseAdditive();
+        Expression.Comparison comparison;
+        if (accept("<=")) {
+            comparison = Expression.Comparison.LE;
+        } else if (accept(">=")) {
+            comparison = Expression.Comparison.GE;
+        } else if (accept("<")) {
+            comparison = Expression.Comparison.LT;
+        } else if (accept(">")) {
+            comparison = Expression.Comparison.GT;
+        } else {
+            return left;
+        }
+        return Expression.compare(comparison, requireNumber(left), requireNumber(parseAdditive()));
+    }
+
+    private Expression parseAdditive() {
+        Expression left = parseMultiplicative();
+        while (true) {
+            char operator = peekOperator("+-");
+            if (operator == 0) {
+                return left;
+            }
+            position++;
+            left = Expression.arithmetic(operator, requireNumber(left), requireNumber(parseMultiplicative()));
+        }
+    }
+
+    private Expression parseMultiplicative() {
+        Expression left = parseUnary();
+        while (true) {
+            char operator = peekOperator("*/%");
+            if (operator == 0) {
+                return left;
+            }
+            position++;
+            left = Expression.arithmetic(operator, requireNumber(left), requireNumber(parseUnary()));
+        }
+    }
+
+    private Expression parseUnary() {
+        if (accept("!")) {
+            return Expression.not(requireBoolean(parseUnary()));
+        }
+        if (accept("-")) {
+            return Expression.negate(requireNumber(parseUnary()));
+        }
+        if (accept("+")) {
+            return requireNumber(parseUnary());
+        }
+        return parsePrimary();
+    }
+
+    private Expression parsePrimary() {
+        skipWhitespace();
+        if (position >= text.length()) {
+            throw error("Unexpected end of expression");
+        }
+        char c = text.charAt(position);
+        if (c == '(') {
+            position++;
+            Expression expression = parseOr();
+            if (!accept(")")) {
+                throw error("Expected ')'");
+            }
+            return expression;
+        }
+        if (Character.isDigit(c) || c == '.') {
+            return parseNumber();
+        }
+        if (Character.isJavaIdentifierStart(c)) {
+            int start = position;
+            while (position < text.length() && Character.isJavaIdentifierPart(text.charAt(position))) {
+                position++;
+            }
+            String identifier = text.substring(start, position);
+            switch (identifier) {
+                case "true":
+                    return Expression.constant(true);
+                case "false":
+                    return Expression.constant(false);
+                default:
+                    Integer slot = slots.get(identifier);
+                    if (slot == null) {
+                        throw error("Unknown identifier " + identifier);
+                    }
+                    return Expression.variable(slot, types.get(identifier));
+            }
+        }
+        throw error("Unexpected '" + c + "'");
+    }
+
+    private Expression parseNumber() {
+        int start = position;
+        boolean decimal = false;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (Character.isDigit(c)) {
+                position++;
+            } else if (c == '.') {
+                decimal = true;
+                position++;
+            } else if ((c == 'e' || c == 'E') && position > start) {
+                decimal = true;
+                position++;
+                if (position < text.length() && (text.charAt(position) == '+' || text.charAt(position) == '-')) {
+                    position++;
+                }
+            } else {
+                break;
+            }
+        }
+        String literal = text.substring(start, position);
+        try {
+            if (position < text.length()) {
+                char suffix = Character.toLowerCase(text.charAt(position));
+                if (suffix == 'd' || suffix == 'f') {
+                    position++;
+                    return Expression.constant(Double.parseDouble(literal));
+                } else if (suffix == 'l' && !decimal) {
+                    position++;
+                    return Expression.constant(Long.parseLong(literal));
+                }
+            }
+            if (decimal) {
+                return Expression.constant(Double.parseDouble(literal));
+            }
+            return Expression.constant(Long.parseLong(literal));
+        } catch (NumberFormatException e) {
+            throw error("Invalid number " + literal);
+        }
+    }
+
+    private Expression requireBoolean(Expression expression) {
+        if (expression.getType() != Expression.Type.BOOLEAN) {
+            throw error("Expected a boolean expression");
+        }
+        return expression;
+    }
+
+    private Expression requireNumber(Expression expression) {
+        if (expression.getType() == Expression.Type.BOOLEAN) {
+            throw error("Expected a numeric expression");
+        }
+        return expression;
+    }
+
+    private char peekOperator(String operators) {
+        skipWhitespace();
+        if (position >= text.length()) {
+            return 0;
+        }
+        char c = text.charAt(position);
+        if (operators.indexOf(c) < 0) {
+            return 0;
+        }
+        // do not mistake the start of "-=" style or logical operators for arithmetic
+        if (position + 1 < text.length() && text.charAt(position + 1) == '=') {
+            return 0;
+        }
+        return c;
+    }
+
+    private boolean accept(String token) {
+        skipWhitespace();
+        if (!text.startsWith(token, position)) {
+            return false;
+        }
+        // a single '<', '>', '!' or '=' must not swallow the first character of a two-character operator
+        if (token.length() == 1 && position + 1 < text.length() && text.charAt(position + 1) == '=' && "<>!=".indexOf(token.charAt(0)) >= 0) {
+            return false;
+        }
+        position += token.length();
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position + " in: " + text);
+    }
+}
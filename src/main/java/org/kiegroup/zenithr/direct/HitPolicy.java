@@ -0,0 +1,36 @@
+package org.kiegroup.zenithr.direct;
+
+import java.util.Locale;
+
+/**
+ * Which output a spec produces when several of its rules match, set by the <code>hitPolicy</code> of the spec.
+ */
+public enum HitPolicy {
+    /**
+     * Every matching rule fires in declared order and the last one wins; the behavior of specs without a hit policy.
+     */
+    LAST,
+    /**
+     * The first matching rule in declared order wins, and evaluation stops there.
+     */
+    FIRST,
+    /**
+     * At most one rule may match; more than one is an error.
+     */
+    UNIQUE,
+    /**
+     * The outputs of all matching rules, in declared order.
+     */
+    COLLECT;
+
+    /**
+     * @throws IllegalArgumentException for an unknown policy name
+     */
+    public static HitPolicy of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown hit policy: " + name);
+        }
+    }
+}
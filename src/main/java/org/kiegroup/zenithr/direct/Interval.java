@@ -0,0 +1,76 @@
+package org.kiegroup.zenithr.direct;
+
+/**
+ * Range of values of a single numeric input, with each end open or closed. Unbounded ends are infinite.
+ */
+class Interval {
+    final int slot;
+    final double lower;
+    final boolean lowerInclusive;
+    final double upper;
+    final boolean upperInclusive;
+
+    Interval(int slot, double lower, boolean lowerInclusive, double upper, boolean upperInclusive) {
+        this.slot = slot;
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+    }
+
+    /**
+     * @return the interval for <code>input comparison constant</code>, or null for a comparison that is not a range
+     */
+    static Interval of(int slot, Expression.Comparison comparison, double constant) {
+        switch (comparison) {
+            case EQ:
+                return new Interval(slot, constant, true, constant, true);
+            case LT:
+                return new Interval(slot, Double.NEGATIVE_INFINITY, false, constant, false);
+            case LE:
+                return new Interval(slot, Double.NEGATIVE_INFINITY, false, constant, true);
+            case GT:
+                return new Interval(slot, constant, false, Double.POSITIVE_INFINITY, false);
+            case GE:
+                return new Interval(slot, constant, true, Double.POSITIVE_INFINITY, false);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the values in both intervals, or null if they constrain different inputs
+     */
+    Interval intersect(Interval other) {
+        if (other == null || other.slot != slot) {
+            return null;
+        }
+        double newLower = lower;
+        boolean newLowerInclusive = lowerInclusive;
+        if (other.lower > lower || (other.lower == lower && !other.lowerInclusive)) {
+            newLower = other.lower;
+            newLowerInclusive = other.lowerInclusive;
+        }
+        double newUpper = upper;
+        boolean newUpperInclusive = upperInclusive;
+        if (other.upper < upper || (other.upper == upper && !other.upperInclusive)) {
+            newUpper = other.upper;
+            newUpperInclusive = other.upperInclusive;
+        }
+        return new Interval(slot, newLower, newLowerInclusive, newUpper, newUpperInclusive);
+    }
+
+    boolean contains(double value) {
+        boolean aboveLower = value > lower || (value == lower && lowerInclusive);
+        boolean belowUpper = value < upper || (value == upper && upperInclusive);
+        return aboveLower && belowUpper;
+    }
+
+    /**
+     * @return whether every value strictly between the two points is in this interval; the points must be adjacent
+     * among all interval bounds, so no bound of this interval lies strictly between them
+     */
+    boolean containsBetween(double from, double to) {
+        return lower <= from && upper >= to;
+    }
+}
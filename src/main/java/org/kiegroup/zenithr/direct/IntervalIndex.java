@@ -0,0 +1,89 @@
+package org.kiegroup.zenithr.direct;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Sorted table of the ranges of one numeric input, built from rules whose conditions only compare that input against
+ * constants. Every distinct bound splits the number line into alternating open gaps and single points; the winning
+ * rule of each segment is resolved once when the index is built, so a lookup is a binary search over the bounds.
+ */
+class IntervalIndex {
+    private final int slot;
+    private final double[] bounds;
+    private final int[] winners;
+
+    private IntervalIndex(int slot, double[] bounds, int[] winners) {
+        this.slot = slot;
+        this.bounds = bounds;
+        this.winners = winners;
+    }
+
+    /**
+     * @param firstWins whether the first declared rule covering a segment wins, rather than the last
+     * @return the index for these conditions, or null unless every condition is a range over the same input
+     */
+    static IntervalIndex build(Expression[] conditions, boolean firstWins) {
+        if (conditions.length == 0) {
+            return null;
+        }
+        Interval[] intervals = new Interval[conditions.length];
+        TreeSet<Double> boundSet = new TreeSet<>();
+        for (int index = 0; index < conditions.length; index++) {
+            intervals[index] = conditions[index].getInterval();
+            if (intervals[index] == null || intervals[index].slot != intervals[0].slot) {
+                return null;
+            }
+            addBound(boundSet, intervals[index].lower);
+            addBound(boundSet, intervals[index].upper);
+        }
+        double[] bounds = new double[boundSet.size()];
+        int position = 0;
+        for (Double bound : boundSet) {
+            bounds[position++] = bound;
+        }
+        // segment 2i + 1 is the point bounds[i]; segment 2i is the open gap below it, and the last segment lies above all bounds
+        int[] winners = new int[2 * bounds.length + 1];
+        for (int segment = 0; segment < winners.length; segment++) {
+            winners[segment] = -1;
+            for (int rule = 0; rule < intervals.length; rule++) {
+                int index = firstWins ? rule : intervals.length - 1 - rule;
+                if (covers(intervals[index], bounds, segment)) {
+                    winners[segment] = index;
+                    break;
+                }
+            }
+        }
+        return new IntervalIndex(intervals[0].slot, bounds, winners);
+    }
+
+    private static void addBound(TreeSet<Double> bounds, double bound) {
+        if (!Double.isInfinite(bound)) {
+            // Double ordering puts -0.0 below 0.0, but comparisons treat them as equal, so only 0.0 is kept
+            bounds.add(bound + 0.0);
+        }
+    }
+
+    private static boolean covers(Interval interval, double[] bounds, int segment) {
+        if (segment % 2 == 1) {
+            return interval.contains(bounds[segment / 2]);
+        }
+        double from = segment == 0 ? Double.NEGATIVE_INFINITY : bounds[segment / 2 - 1];
+        double to = segment / 2 == bounds.length ? Double.POSITIVE_INFINITY : bounds[segment / 2];
+        return interval.containsBetween(from, to);
+    }
+
+    /**
+     * @return the index of the winning rule whose range contains the input, or -1 if none does
+     */
+    int lookup(double[] inputs) {
+        // -0.0 must land on a bound of 0.0, as it compares equal to it
+        double value = inputs[slot] + 0.0;
+        if (Double.isNaN(value)) {
+            return -1;
+        }
+        int position = Arrays.binarySearch(bounds, value);
+        int segment = position >= 0 ? 2 * position + 1 : 2 * (-position - 1);
+        return winners[segment];
+    }
+}
@@ -0,0 +1,123 @@
+package org.kiegroup.zenithr.drools;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of input rows and their results, for callers that evaluate at high rates and already hold
+ * typed values. All numbers are big-endian, as written by {@link DataOutputStream}.
+ * <p>
+ * A request is a row count (int) followed by the rows. Each row has every input in the order of the spec, each as a
+ * presence byte (0 for missing, 1 for present) followed, when present, by its value: boolean as one byte, int as 4
+ * bytes, long and double as 8, date as the epoch day (int), datetime as epoch milliseconds (long) and string as a byte
+ * length (int) and UTF-8 bytes.
+ * <p>
+ * A response is the row count followed by one result per row: a status byte of 0 for no output, 1 for an output value
+ * encoded like an input of the output type, 2 for an error followed by its message as a string, or 3 for a list of
+ * output values as a count (int) and the values.
+ * <p>
+ * Requests carry the fingerprint of the spec the caller was built against in the {@link #SCHEMA_HEADER} header, so a
+ * caller whose layout no longer matches the spec is rejected instead of having its bytes misread.
+ */
+public class BinaryRows {
+    public static final String CONTENT_TYPE = "application/x-zenithr-binary";
+    public static final String SCHEMA_HEADER = "X-Zenithr-Schema";
+    private static final int MISSING = 0;
+    private static final int PRESENT = 1;
+    private static final int NO_OUTPUT = 0;
+    private static final int OUTPUT = 1;
+    private static final int ERROR = 2;
+    private static final int OUTPUT_LIST = 3;
+
+    /**
+     * @return a short hash of the input names and types, in order, and the output type: everything the binary layout
+     * depends on
+     */
+    static String getFingerprint(Map<String, String> inputTypeMap, String outputType) {
+        StringBuilder schema = new StringBuilder();
+        for (Map.Entry<String, String> entry : inputTypeMap.entrySet()) {
+            schema.append(entry.getKey()).append(':').append(entry.getValue()).append(',');
+        }
+        schema.append("->").append(outputType);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(schema.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int index = 0; index < 8; index++) {
+                hex.append(String.format("%02x", digest[index]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the typed input values of each row, in input order, with null for missing inputs
+     * @throws IllegalArgumentException if the body is truncated or not a valid request
+     */
+    public static List<Object[]> read(SessionFactory sessionFactory, InputStream body) throws IOException {
+        DataInputStream in = new DataInputStream(body);
+        ValueType[] types = sessionFactory.getInputTypes();
+        try {
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative row count: " + count);
+            }
+            List<Object[]> rows = new ArrayList<>(Math.min(count, 1024));
+            for (int row = 0; row < count; row++) {
+                Object[] values = new Object[types.length];
+                for (int slot = 0; slot < types.length; slot++) {
+                    int presence = in.readUnsignedByte();
+                    if (presence == PRESENT) {
+                        values[slot] = types[slot].read(in);
+                    } else if (presence != MISSING) {
+                        throw new IllegalArgumentException("Invalid presence byte " + presence + " in row " + row);
+                    }
+                }
+                rows.add(values);
+            }
+            if (in.read() != -1) {
+                throw new IllegalArgumentException("Unexpected data after " + count + " rows");
+            }
+            return rows;
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Request body ends before the last row");
+        }
+    }
+
+    public static void write(SessionFactory sessionFactory, List<EvaluationResult> results, OutputStream body) throws IOException {
+        DataOutputStream out = new DataOutputStream(body);
+        ValueType outputType = sessionFactory.getOutputValueType();
+        out.writeInt(results.size());
+        for (EvaluationResult result : results) {
+            Object output = result.getOutput();
+            if (!result.isSuccess()) {
+                out.writeByte(ERROR);
+                ValueType.STRING.write(out, result.getError());
+            } else if (output == null) {
+                out.writeByte(NO_OUTPUT);
+            } else if (output instanceof List) {
+                List<?> outputs = (List<?>) output;
+                out.writeByte(OUTPUT_LIST);
+                out.writeInt(outputs.size());
+                for (Object element : outputs) {
+                    outputType.write(out, element);
+                }
+            } else {
+                out.writeByte(OUTPUT);
+                outputType.write(out, output);
+            }
+        }
+        out.flush();
+    }
+}
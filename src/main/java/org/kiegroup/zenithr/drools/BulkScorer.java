@@ -0,0 +1,270 @@
+package org.kiegroup.zenithr.drools;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonValue;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scores a stream of NDJSON or CSV rows against one compiled spec. Rows are read in chunks that a fixed set of workers
+ * evaluate in parallel, each chunk on one pooled session; results are written in input order as soon as the oldest
+ * chunk is done. Only a bounded window of chunks is in memory at any time, whatever the size of the input.
+ * <p>
+ * Each input row yields one output row: <code>{"output": ...}</code> or <code>{"error": "..."}</code> in NDJSON, and
+ * an <code>output,error</code> line under a header of the same name in CSV. CSV input must start with a header naming
+ * the inputs; quoted fields may contain commas and doubled quotes but not line breaks.
+ */
+public class BulkScorer {
+    public static final String WORKERS = "zenithr.bulk.workers";
+    public static final String CHUNK_SIZE = "zenithr.bulk.chunk";
+    private static final long REPORT_INTERVAL_NANOS = 5_000_000_000L;
+
+    public enum Format {
+        NDJSON, CSV;
+
+        /**
+         * @return the format of a media type such as <code>text/csv</code>, or of a file name ending in .csv; NDJSON
+         * otherwise
+         */
+        public static Format of(String name) {
+            return name != null && name.toLowerCase(Locale.ROOT).contains("csv") ? CSV : NDJSON;
+        }
+    }
+
+    private final SessionFactory sessionFactory;
+    private final int workers;
+    private final int chunkSize;
+    private final PrintStream log;
+
+    public BulkScorer(SessionFactory sessionFactory, int workers, int chunkSize, PrintStream log) {
+        if (workers < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Workers and chunk size must be positive: " + workers + ", " + chunkSize);
+        }
+        this.sessionFactory = sessionFactory;
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+        this.log = log;
+    }
+
+    public static BulkScorer fromSystemProperties(SessionFactory sessionFactory, PrintStream log) {
+        int workers = Integer.getInteger(WORKERS, Runtime.getRuntime().availableProcessors());
+        return new BulkScorer(sessionFactory, workers, Integer.getInteger(CHUNK_SIZE, 512), log);
+    }
+
+    /**
+     * @return the number of rows scored
+     */
+    public long score(Reader input, Writer output, Format format) throws IOException {
+        BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        String[] header = null;
+        if (format == Format.CSV) {
+            String line = reader.readLine();
+            if (line == null) {
+                return 0;
+            }
+            header = parseCsv(line);
+            output.write("output,error\n");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new WorkerThreadFactory());
+        Deque<Future<Chunk>> window = new ArrayDeque<>();
+        Progress progress = new Progress();
+        try {
+            List<String> lines = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    if (window.size() >= workers * 2) {
+                        write(window.poll(), output, progress);
+                    }
+                    List<String> chunk = lines;
+                    String[] names = header;
+                    window.add(executor.submit(() -> score(chunk, names, format)));
+                    lines = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!lines.isEmpty()) {
+                List<String> chunk = lines;
+                String[] names = header;
+                window.add(executor.submit(() -> score(chunk, names, format)));
+            }
+            while (!window.isEmpty()) {
+                write(window.poll(), output, progress);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        progress.report(true);
+        return progress.rows;
+    }
+
+    private void write(Future<Chunk> future, Writer output, Progress progress) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scoring", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Scoring failed", e.getCause());
+        }
+        output.write(chunk.text);
+        output.flush();
+        progress.rows += chunk.rows;
+        progress.report(false);
+    }
+
+    private Chunk score(List<String> lines, String[] header, Format format) {
+        List<Map<String, String[]>> rows = new ArrayList<>(lines.size());
+        String[] errors = new String[lines.size()];
+        for (int index = 0; index < lines.size(); index++) {
+            try {
+                rows.add(format == Format.CSV ? getCsvParameters(header, lines.get(index)) : getJsonParameters(lines.get(index)));
+            } catch (IllegalArgumentException e) {
+                rows.add(Collections.emptyMap());
+                errors[index] = e.getMessage();
+            }
+        }
+        List<EvaluationResult> results = RuleService.getOutputs(sessionFactory, rows);
+        StringBuilder text = new StringBuilder(lines.size() * 24);
+        for (int index = 0; index < results.size(); index++) {
+            EvaluationResult result = errors[index] == null ? results.get(index) : EvaluationResult.failure(new IllegalArgumentException(errors[index]));
+            if (format == Format.CSV) {
+                appendCsv(text, result);
+            } else {
+                text.append(JsonRows.toJson(result).build().toString()).append('\n');
+            }
+        }
+        return new Chunk(lines.size(), text.toString());
+    }
+
+    private static Map<String, String[]> getJsonParameters(String line) {
+        JsonValue row;
+        try {
+            row = Json.createReader(new StringReader(line)).readObject();
+        } catch (JsonException | IllegalStateException e) {
+            throw new IllegalArgumentException("Row is not a JSON object");
+        }
+        return JsonRows.getParameters(row);
+    }
+
+    private static Map<String, String[]> getCsvParameters(String[] header, String line) {
+        String[] values = parseCsv(line);
+        if (values.length > header.length) {
+            throw new IllegalArgumentException("Row has " + values.length + " fields but the header has " + header.length);
+        }
+        Map<String, String[]> parameters = new HashMap<>();
+        for (int index = 0; index < values.length; index++) {
+            if (!values[index].isEmpty()) {
+                parameters.put(header[index], new String[]{values[index]});
+            }
+        }
+        return parameters;
+    }
+
+    static String[] parseCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int index = 0; index < line.length(); index++) {
+            char c = line.charAt(index);
+            if (quoted) {
+                if (c == '"' && index + 1 < line.length() && line.charAt(index + 1) == '"') {
+                    field.append('"');
+                    index++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+
+    private static void appendCsv(StringBuilder text, EvaluationResult result) {
+        Object output = result.getOutput();
+        if (output instanceof Date) {
+            output = ((Date) output).getTime();
+        }
+        appendCsvField(text, output == null ? "" : output.toString());
+        text.append(',');
+        appendCsvField(text, result.isSuccess() ? "" : result.getError());
+        text.append('\n');
+    }
+
+    private static void appendCsvField(StringBuilder text, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            text.append(value);
+        } else {
+            text.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+    }
+
+    private static class Chunk {
+        private final int rows;
+        private final String text;
+
+        Chunk(int rows, String text) {
+            this.rows = rows;
+            this.text = text;
+        }
+    }
+
+    private class Progress {
+        private final long start = System.nanoTime();
+        private long lastReport = start;
+        private long rows;
+
+        void report(boolean done) {
+            long now = System.nanoTime();
+            if (done || now - lastReport >= REPORT_INTERVAL_NANOS) {
+                lastReport = now;
+                double seconds = Math.max(now - start, 1) / 1e9;
+                log.println(String.format("%s %d rows in %.1f s, %.0f rows/s", done ? "Scored" : "Scoring:", rows, seconds, rows / seconds));
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "zenithr-bulk-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.kiegroup.zenithr.drools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every output of a spec whose inputs all have a small, known set of values, evaluated once when the spec is loaded.
+ * Each combination of input values has one slot in a flat array, found by reading the position of each value in the
+ * domain of its input as one digit of a mixed-radix number.
+ * <p>
+ * Requests with a missing input or a value outside its domain, and combinations whose evaluation failed, are left to
+ * the engine.
+ */
+class DecisionTable {
+    static final String MAX_SIZE = "zenithr.table.max";
+    static final Object MISS = new Object();
+    private final List<Map<Object, Integer>> positions;
+    private final Object[] outputs;
+
+    private DecisionTable(List<Map<Object, Integer>> positions, Object[] outputs) {
+        this.positions = positions;
+        this.outputs = outputs;
+    }
+
+    /**
+     * @param domains the possible values of each input, in input order
+     * @return the table of every output, or null if there are more than <code>maxSize</code> combinations
+     */
+    static DecisionTable build(SessionFactory sessionFactory, List<List<Object>> domains, int maxSize) {
+        long size = 1;
+        for (List<Object> domain : domains) {
+            size *= domain.size();
+            if (size > maxSize) {
+                return null;
+            }
+        }
+        if (size == 0) {
+            return null;
+        }
+        List<Map<Object, Integer>> positions = new ArrayList<>(domains.size());
+        for (List<Object> domain : domains) {
+            Map<Object, Integer> position = new HashMap<>();
+            for (int index = 0; index < domain.size(); index++) {
+                position.put(domain.get(index), index);
+            }
+            positions.add(position);
+        }
+        Object[] outputs = new Object[(int) size];
+        // the table is not traffic, so its evaluations stay out of the phase timings and rule firing counts
+        RuleMetrics.unrecorded(() -> {
+            for (int index = 0; index < outputs.length; index++) {
+                Object[] values = new Object[domains.size()];
+                int rest = index;
+                for (int slot = values.length - 1; slot >= 0; slot--) {
+                    List<Object> domain = domains.get(slot);
+                    values[slot] = domain.get(rest % domain.size());
+                    rest /= domain.size();
+                }
+                try {
+                    outputs[index] = RuleService.evaluate(sessionFactory, values);
+                } catch (RuntimeException e) {
+                    outputs[index] = MISS;
+                }
+            }
+        });
+        return new DecisionTable(positions, outputs);
+    }
+
+    /**
+     * @return the output for these input values, or {@link #MISS} if the engine has to evaluate them
+     */
+    Object get(Object[] values) {
+        int index = 0;
+        for (int slot = 0; slot < values.length; slot++) {
+            Map<Object, Integer> position = positions.get(slot);
+            Integer digit = values[slot] == null ? null : position.get(values[slot]);
+            if (digit == null) {
+                return MISS;
+            }
+            index = index * position.size() + digit;
+        }
+        return outputs[index];
+    }
+
+    int size() {
+        return outputs.length;
+    }
+}
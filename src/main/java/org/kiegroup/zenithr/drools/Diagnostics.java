@@ -0,0 +1,200 @@
+package org.kiegroup.zenithr.drools;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Traces single evaluations to find where slow requests spend their time: parsing, building facts, getting a session,
+ * inserting, firing or extracting the output. Each traced evaluation can be emitted as a Java Flight Recorder event,
+ * when <code>zenithr.jfr</code> is set, and logged with its inputs when it takes longer than
+ * <code>zenithr.slow.threshold</code> milliseconds, at most <code>zenithr.slow.rate</code> times a second.
+ * <p>
+ * With neither enabled, evaluations only read one flag. Flight Recorder events need a build on JDK 11 or later, which
+ * adds the event class; other builds log that <code>zenithr.jfr</code> has no effect.
+ */
+public class Diagnostics {
+    public static final String JFR_ENABLED = "zenithr.jfr";
+    public static final String SLOW_THRESHOLD = "zenithr.slow.threshold";
+    public static final String SLOW_RATE = "zenithr.slow.rate";
+    private static final String JFR_TRACER = "org.kiegroup.zenithr.drools.EvaluationEvent$Tracer";
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+    private static volatile boolean enabled;
+    private static volatile EvaluationTracer tracer = EvaluationTracer.NONE;
+    private static volatile long slowThresholdNanos;
+    private static volatile int slowRate;
+    private static volatile PrintStream log;
+    private static long logSecond;
+    private static int loggedThisSecond;
+    private static long suppressed;
+
+    static {
+        configure(Boolean.getBoolean(JFR_ENABLED), Long.getLong(SLOW_THRESHOLD, 0L) * 1_000_000, Integer.getInteger(SLOW_RATE, 10), System.out);
+    }
+
+    static synchronized void configure(boolean jfrEnabled, long thresholdNanos, int rate, PrintStream printStream) {
+        tracer = jfrEnabled ? loadTracer() : EvaluationTracer.NONE;
+        slowThresholdNanos = thresholdNanos;
+        slowRate = rate;
+        log = printStream;
+        enabled = tracer != EvaluationTracer.NONE || thresholdNanos > 0;
+    }
+
+    private static EvaluationTracer loadTracer() {
+        try {
+            return (EvaluationTracer) Class.forName(JFR_TRACER).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("Flight Recorder events are not available in this build, ignoring " + JFR_ENABLED + ": " + e);
+            return EvaluationTracer.NONE;
+        }
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the trace of an evaluation of this spec starting on the current thread, or null when tracing is off
+     */
+    static Trace begin(SessionFactory sessionFactory) {
+        if (!enabled) {
+            return null;
+        }
+        Trace trace = new Trace(sessionFactory.getServiceName(), sessionFactory.getInputTypeMap().size(), CURRENT.get());
+        trace.event = tracer.start();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    static void record(RuleMetrics.Phase phase, long nanos) {
+        Trace trace = CURRENT.get();
+        if (trace != null) {
+            trace.phaseNanos[phase.ordinal()] += nanos;
+        }
+    }
+
+    static void fired(int rules) {
+        if (enabled) {
+            Trace trace = CURRENT.get();
+            if (trace != null) {
+                trace.rulesFired += rules;
+            }
+        }
+    }
+
+    /**
+     * Ends the trace returned by {@link #begin(SessionFactory)}, committing its event and logging it with the request
+     * parameters if it was slow.
+     */
+    static void end(Trace trace, Map<String, String[]> parameters) {
+        long nanos = finish(trace);
+        long skipped = nanos < 0 ? -1 : acquireLogPermit();
+        if (skipped >= 0) {
+            StringBuilder line = format(trace, nanos);
+            String separator = "";
+            for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+                String[] values = entry.getValue();
+                line.append(separator).append(entry.getKey()).append('=')
+                        .append(values == null ? "null" : values.length == 1 ? values[0] : Arrays.toString(values));
+                separator = ", ";
+            }
+            log.println(format(line, skipped));
+        }
+    }
+
+    /**
+     * Ends the trace of an evaluation of typed values, such as a row of a binary request, logging it with the values
+     * by input name if it was slow.
+     */
+    static void end(Trace trace, String[] names, Object[] values) {
+        long nanos = finish(trace);
+        long skipped = nanos < 0 ? -1 : acquireLogPermit();
+        if (skipped >= 0) {
+            StringBuilder line = format(trace, nanos);
+            for (int slot = 0; slot < names.length; slot++) {
+                line.append(slot == 0 ? "" : ", ").append(names[slot]).append('=').append(values[slot]);
+            }
+            log.println(format(line, skipped));
+        }
+    }
+
+    /**
+     * Commits the event of the trace and restores the trace it was nested in.
+     *
+     * @return how long the evaluation took if it is to be logged as slow, or -1
+     */
+    private static long finish(Trace trace) {
+        if (trace == null) {
+            return -1;
+        }
+        long nanos = System.nanoTime() - trace.start;
+        if (trace.parent == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(trace.parent);
+        }
+        if (trace.event != null) {
+            tracer.commit(trace.event, trace);
+        }
+        return slowThresholdNanos > 0 && nanos >= slowThresholdNanos ? nanos : -1;
+    }
+
+    /**
+     * @return how many slow evaluations went unlogged since the last one that was, or -1 if this one must not be logged
+     */
+    private static synchronized long acquireLogPermit() {
+        long second = System.nanoTime() / 1_000_000_000;
+        if (second != logSecond) {
+            logSecond = second;
+            loggedThisSecond = 0;
+        }
+        if (loggedThisSecond >= slowRate) {
+            suppressed++;
+            return -1;
+        }
+        loggedThisSecond++;
+        long skipped = suppressed;
+        suppressed = 0;
+        return skipped;
+    }
+
+    /**
+     * @return the start of the log line of a slow evaluation, up to its inputs
+     */
+    private static StringBuilder format(Trace trace, long nanos) {
+        StringBuilder line = new StringBuilder("Slow evaluation of ").append(trace.serviceName)
+                .append(String.format(Locale.ROOT, ": %.3f ms", nanos / 1e6));
+        for (RuleMetrics.Phase phase : RuleMetrics.Phase.values()) {
+            long phaseNanos = trace.phaseNanos[phase.ordinal()];
+            if (phaseNanos > 0) {
+                line.append(String.format(Locale.ROOT, ", %s %.3f ms", phase.name().toLowerCase(Locale.ROOT), phaseNanos / 1e6));
+            }
+        }
+        return line.append(", ").append(trace.rulesFired).append(" rules fired, inputs {");
+    }
+
+    private static String format(StringBuilder line, long skipped) {
+        line.append('}');
+        if (skipped > 0) {
+            line.append(" (").append(skipped).append(" more slow evaluations not logged)");
+        }
+        return line.toString();
+    }
+
+    static class Trace {
+        final String serviceName;
+        final int inputs;
+        final long[] phaseNanos = new long[RuleMetrics.Phase.values().length];
+        final long start = System.nanoTime();
+        private final Trace parent;
+        int rulesFired;
+        private Object event;
+
+        Trace(String serviceName, int inputs, Trace parent) {
+            this.serviceName = serviceName;
+            this.inputs = inputs;
+            this.parent = parent;
+        }
+    }
+}
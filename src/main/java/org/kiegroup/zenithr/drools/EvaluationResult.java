@@ -0,0 +1,44 @@
+package org.kiegroup.zenithr.drools;
+
+/**
+ * Outcome of evaluating one input row: either the output value (which may be null when no rule matched) or the
+ * reason the row could not be evaluated.
+ */
+public class EvaluationResult {
+    private final Object output;
+    private final String error;
+
+    private EvaluationResult(Object output, String error) {
+        this.output = output;
+        this.error = error;
+    }
+
+    public static EvaluationResult success(Object output) {
+        return new EvaluationResult(output, null);
+    }
+
+    public static EvaluationResult failure(Exception e) {
+        String message = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+        return new EvaluationResult(null, message);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public Object getOutput() {
+        return output;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluationResult{" +
+                "output=" + output +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
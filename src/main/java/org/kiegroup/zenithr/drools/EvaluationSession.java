@@ -0,0 +1,179 @@
+package org.kiegroup.zenithr.drools;
+
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inputs and rule session kept between requests of one interactive client, so each request only sends the inputs that
+ * changed. Changed inputs are set on their existing facts, which are updated naming only the properties that changed,
+ * and the rules are fired again. This lets Drools reuse the matches of everything that did not change instead of
+ * evaluating the whole spec from scratch.
+ * <p>
+ * A session stays on the spec that was current when it was opened, even if the spec is reloaded meanwhile.
+ */
+public class EvaluationSession {
+    private final String id;
+    private final SessionFactory sessionFactory;
+    private final String[] names;
+    private final Object[] values;
+    private final KieSession kieSession;
+    private final Object[] facts;
+    private final FactHandle[] handles;
+    private final List<String> changedProperties = new ArrayList<>();
+    private FactHandle outputHandle;
+    private Object output;
+    private boolean evaluated;
+    private volatile long lastAccess;
+    private boolean closed;
+
+    EvaluationSession(String id, SessionFactory sessionFactory) {
+        this.id = id;
+        this.sessionFactory = sessionFactory;
+        this.names = sessionFactory.getInputTypeMap().keySet().toArray(new String[0]);
+        this.values = new Object[names.length];
+        // the direct evaluator is cheaper than any session, so only Drools specs keep one
+        this.kieSession = sessionFactory.getDirectEvaluator() == null ? sessionFactory.newKieSession() : null;
+        this.facts = new Object[sessionFactory.hasTypedFacts() ? 1 : names.length];
+        this.handles = new FactHandle[facts.length];
+        this.lastAccess = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public SessionFactory getSessionFactory() {
+        return sessionFactory;
+    }
+
+    /**
+     * Applies the given inputs and evaluates again. Inputs not mentioned keep their value; an input mapped to null is
+     * cleared, as is one mapped to an empty value unless it is a string input, which takes the empty string.
+     *
+     * @return the output for all current inputs
+     * @throws InvalidInputException if any given value does not parse, in which case no input changes
+     */
+    public synchronized Object update(Map<String, String[]> parameters) {
+        if (closed) {
+            throw new IllegalStateException("Evaluation session " + id + " is closed");
+        }
+        lastAccess = System.currentTimeMillis();
+        Object[] parsed = sessionFactory.getValues(parameters);
+        boolean changed = false;
+        for (int slot = 0; slot < names.length; slot++) {
+            if (parameters.containsKey(names[slot]) && !equal(values[slot], parsed[slot])) {
+                values[slot] = parsed[slot];
+                changed = true;
+                if (kieSession != null) {
+                    if (sessionFactory.hasTypedFacts()) {
+                        setTypedInput(slot);
+                    } else {
+                        updateFactField(slot);
+                    }
+                }
+            }
+        }
+        if (changed || !evaluated) {
+            output = kieSession == null ? RuleService.evaluate(sessionFactory, values) : fire();
+            evaluated = true;
+        }
+        return output;
+    }
+
+    public synchronized Object getOutput() {
+        lastAccess = System.currentTimeMillis();
+        return output;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void updateFactField(int slot) {
+        if (values[slot] == null) {
+            if (handles[slot] != null) {
+                kieSession.delete(handles[slot]);
+                handles[slot] = null;
+            }
+        } else if (facts[slot] == null) {
+            facts[slot] = sessionFactory.getFactField(slot, values[slot]);
+            handles[slot] = kieSession.insert(facts[slot]);
+        } else {
+            sessionFactory.getInputTypes()[slot].set((FactField) facts[slot], values[slot]);
+            if (handles[slot] == null) {
+                handles[slot] = kieSession.insert(facts[slot]);
+            } else {
+                kieSession.update(handles[slot], facts[slot], sessionFactory.getFactFieldProperty(slot));
+            }
+        }
+    }
+
+    /**
+     * Sets a changed input on the typed fact, which is only updated once all inputs are applied.
+     */
+    private void setTypedInput(int slot) {
+        if (facts[0] == null) {
+            facts[0] = sessionFactory.newTypedInput();
+        }
+        if (values[slot] != null) {
+            sessionFactory.setTypedInput(facts[0], slot, values[slot]);
+        }
+        changedProperties.add(names[slot]);
+    }
+
+    /**
+     * Keeps the typed fact in the session only while every input has a value, since no rule can match before.
+     */
+    private void updateTypedFact() {
+        if (Arrays.asList(values).contains(null)) {
+            if (handles[0] != null) {
+                kieSession.delete(handles[0]);
+                handles[0] = null;
+            }
+        } else if (handles[0] == null) {
+            if (facts[0] == null) {
+                facts[0] = sessionFactory.newTypedInput();
+            }
+            handles[0] = kieSession.insert(facts[0]);
+        } else {
+            kieSession.update(handles[0], facts[0], changedProperties.toArray(new String[0]));
+        }
+        changedProperties.clear();
+    }
+
+    /**
+     * Swaps a blank output fact in under the same handle before firing, so a rule that matched before but no longer
+     * does cannot leave its value behind. Input matches stay in place; only their join with the output fact is redone.
+     */
+    private Object fire() {
+        if (sessionFactory.hasTypedFacts()) {
+            updateTypedFact();
+        }
+        FactField outputFact = new FactField();
+        outputFact.setName("output");
+        if (outputHandle == null) {
+            outputHandle = kieSession.insert(outputFact);
+        } else {
+            kieSession.update(outputHandle, outputFact);
+        }
+        return RuleService.fire(sessionFactory, kieSession, outputFact);
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    synchronized void close() {
+        if (!closed) {
+            closed = true;
+            if (kieSession != null) {
+                kieSession.dispose();
+            }
+        }
+    }
+}
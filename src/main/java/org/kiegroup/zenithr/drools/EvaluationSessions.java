@@ -0,0 +1,135 @@
+package org.kiegroup.zenithr.drools;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live {@link EvaluationSession}s by id. Sessions idle for longer than the TTL are closed, and no more than the maximum
+ * number are open at once. Expired sessions are swept every few seconds by a background thread, so an idle server does
+ * not hold on to them, and also whenever a session is opened or looked up.
+ */
+public class EvaluationSessions {
+    static final String MAX_SESSIONS = "zenithr.sessions.max";
+    static final String SESSION_TTL = "zenithr.sessions.ttl";
+    private static final long SWEEP_INTERVAL_MILLIS = 5000;
+    private static EvaluationSessions INSTANCE;
+    private final int maxSessions;
+    private final long ttlMillis;
+    private final Map<String, EvaluationSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile long lastSweep;
+
+    EvaluationSessions(int maxSessions, long ttlMillis) {
+        this.maxSessions = maxSessions;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public static synchronized EvaluationSessions getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new EvaluationSessions(Integer.getInteger(MAX_SESSIONS, 1000), Long.getLong(SESSION_TTL, 300_000L));
+            INSTANCE.scheduleSweep(SWEEP_INTERVAL_MILLIS);
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Starts a daemon thread that closes expired sessions at this interval.
+     */
+    void scheduleSweep(long intervalMillis) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "zenithr-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (RuntimeException e) {
+                // a failure must not cancel the later sweeps
+                System.out.println("Failed to sweep expired evaluation sessions: " + e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @throws IllegalStateException if the maximum number of sessions is already open
+     */
+    public EvaluationSession open(SessionFactory sessionFactory) {
+        sweep();
+        if (count.incrementAndGet() > maxSessions) {
+            count.decrementAndGet();
+            throw new IllegalStateException("All " + maxSessions + " evaluation sessions are in use");
+        }
+        EvaluationSession session;
+        try {
+            session = new EvaluationSession(UUID.randomUUID().toString(), sessionFactory);
+        } catch (RuntimeException e) {
+            count.decrementAndGet();
+            throw e;
+        }
+        sessions.put(session.getId(), session);
+        return session;
+    }
+
+    /**
+     * @return the session with this id, or null if there is none or it has expired
+     */
+    public EvaluationSession get(String id) {
+        if (System.currentTimeMillis() - lastSweep > SWEEP_INTERVAL_MILLIS) {
+            sweep();
+        }
+        EvaluationSession session = sessions.get(id);
+        if (session != null && isExpired(session, System.currentTimeMillis())) {
+            close(id);
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * @return whether a session with this id was open
+     */
+    public boolean close(String id) {
+        EvaluationSession session = sessions.remove(id);
+        if (session == null) {
+            return false;
+        }
+        count.decrementAndGet();
+        session.close();
+        return true;
+    }
+
+    private boolean isExpired(EvaluationSession session, long now) {
+        return now - session.getLastAccess() > ttlMillis;
+    }
+
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        lastSweep = now;
+        Iterator<Map.Entry<String, EvaluationSession>> iterator = sessions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, EvaluationSession> entry = iterator.next();
+            if (isExpired(entry.getValue(), now)) {
+                close(entry.getKey());
+            }
+        }
+    }
+
+    public int getSize() {
+        return count.get();
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+}
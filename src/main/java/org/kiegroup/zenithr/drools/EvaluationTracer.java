@@ -0,0 +1,25 @@
+package org.kiegroup.zenithr.drools;
+
+/**
+ * Emits traced evaluations to a recorder outside the process log. The default build has none; builds on JDK 11 or
+ * later add one for Java Flight Recorder from <code>src/jfr/java</code>.
+ */
+interface EvaluationTracer {
+    EvaluationTracer NONE = new EvaluationTracer() {
+        @Override
+        public Object start() {
+            return null;
+        }
+
+        @Override
+        public void commit(Object started, Diagnostics.Trace trace) {
+        }
+    };
+
+    /**
+     * @return the started event, or null if there is nothing to commit
+     */
+    Object start();
+
+    void commit(Object started, Diagnostics.Trace trace);
+}
@@ -0,0 +1,30 @@
+package org.kiegroup.zenithr.drools;
+
+/**
+ * An input value that does not parse as the type its spec declares. Requests carrying one are rejected before any
+ * rule is evaluated.
+ */
+public class InvalidInputException extends IllegalArgumentException {
+    private final String input;
+    private final String type;
+    private final String value;
+
+    InvalidInputException(String input, String type, String value) {
+        super("Invalid " + type + " value for " + input + ": " + value);
+        this.input = input;
+        this.type = type;
+        this.value = value;
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,185 @@
+package org.kiegroup.zenithr.drools;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversion between JSON rows and the request parameters and results of {@link RuleService}, shared by the batch and
+ * bulk endpoints.
+ */
+public class JsonRows {
+
+    /**
+     * @return the members of a JSON object as request parameters, skipping nulls; any other JSON value has none
+     */
+    public static Map<String, String[]> getParameters(JsonValue row) {
+        Map<String, String[]> parameters = new HashMap<>();
+        if (row.getValueType() == JsonValue.ValueType.OBJECT) {
+            for (Map.Entry<String, JsonValue> entry : ((JsonObject) row).entrySet()) {
+                JsonValue value = entry.getValue();
+                switch (value.getValueType()) {
+                    case NULL:
+                        break;
+                    case STRING:
+                        parameters.put(entry.getKey(), new String[]{((JsonString) value).getString()});
+                        break;
+                    default:
+                        parameters.put(entry.getKey(), new String[]{value.toString()});
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * @param columns an object with an array of values for every input, all of the same length
+     * @return the columns as primitive arrays in input order, as {@link RuleService#getOutputsForColumns} takes them
+     * @throws IllegalArgumentException if an input has no column
+     * @throws InvalidInputException    if a value is missing or not exactly a value of the input type, such as 1.5 or
+     *                                  2^31 for an int
+     */
+    public static Object[] getColumns(SessionFactory sessionFactory, JsonObject columns) {
+        String[] names = sessionFactory.getInputTypeMap().keySet().toArray(new String[0]);
+        ValueType[] types = sessionFactory.getInputTypes();
+        Object[] primitives = new Object[names.length];
+        for (int slot = 0; slot < names.length; slot++) {
+            JsonValue column = columns.get(names[slot]);
+            if (column == null || column.getValueType() != JsonValue.ValueType.ARRAY) {
+                throw new IllegalArgumentException("Expected an array of values for " + names[slot]);
+            }
+            JsonArray values = (JsonArray) column;
+            ValueType type = types[slot];
+            switch (type) {
+                case BOOLEAN:
+                    boolean[] booleans = new boolean[values.size()];
+                    for (int row = 0; row < booleans.length; row++) {
+                        JsonValue value = values.get(row);
+                        if (value.getValueType() != JsonValue.ValueType.TRUE && value.getValueType() != JsonValue.ValueType.FALSE) {
+                            throw new InvalidInputException(names[slot], type.toString(), value.toString());
+                        }
+                        booleans[row] = value.getValueType() == JsonValue.ValueType.TRUE;
+                    }
+                    primitives[slot] = booleans;
+                    break;
+                case INT:
+                    int[] ints = new int[values.size()];
+                    for (int row = 0; row < ints.length; row++) {
+                        JsonNumber number = getNumber(names[slot], type, values.get(row));
+                        try {
+                            ints[row] = number.intValueExact();
+                        } catch (ArithmeticException e) {
+                            throw new InvalidInputException(names[slot], type.toString(), number.toString());
+                        }
+                    }
+                    primitives[slot] = ints;
+                    break;
+                case LONG:
+                    long[] longs = new long[values.size()];
+                    for (int row = 0; row < longs.length; row++) {
+                        JsonNumber number = getNumber(names[slot], type, values.get(row));
+                        try {
+                            longs[row] = number.longValueExact();
+                        } catch (ArithmeticException e) {
+                            throw new InvalidInputException(names[slot], type.toString(), number.toString());
+                        }
+                    }
+                    primitives[slot] = longs;
+                    break;
+                case DOUBLE:
+                    double[] doubles = new double[values.size()];
+                    for (int row = 0; row < doubles.length; row++) {
+                        JsonNumber number = getNumber(names[slot], type, values.get(row));
+                        doubles[row] = number.doubleValue();
+                        if (Double.isInfinite(doubles[row])) {
+                            throw new InvalidInputException(names[slot], type.toString(), number.toString());
+                        }
+                    }
+                    primitives[slot] = doubles;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Input " + names[slot] + " of type " + type + " cannot be passed as a column");
+            }
+        }
+        return primitives;
+    }
+
+    private static JsonNumber getNumber(String name, ValueType type, JsonValue value) {
+        if (value.getValueType() != JsonValue.ValueType.NUMBER) {
+            throw new InvalidInputException(name, type.toString(), value.toString());
+        }
+        return (JsonNumber) value;
+    }
+
+    /**
+     * @return <code>{"output": ...}</code>, with dates as epoch milliseconds and the outputs of the collect hit policy
+     * as an array, or <code>{"error": "..."}</code>, also when the output is a number JSON cannot hold
+     */
+    public static JsonObjectBuilder toJson(EvaluationResult result) {
+        if (!result.isSuccess()) {
+            return error(result.getError());
+        }
+        JsonValue output;
+        try {
+            output = toJson(result.getOutput());
+        } catch (IllegalArgumentException e) {
+            // fails only this row, not the whole response
+            return error(e.getMessage());
+        }
+        return Json.createObjectBuilder().add("output", output);
+    }
+
+    /**
+     * @throws IllegalArgumentException for NaN or an infinite number
+     */
+
+    private static JsonValue toJson(Object output) {
+        if (output instanceof List) {
+            JsonArrayBuilder array = Json.createArrayBuilder();
+            for (Object element : (List<?>) output) {
+                array.add(toJson(element));
+            }
+            return array.build();
+        }
+        JsonArrayBuilder value = Json.createArrayBuilder();
+        if (output == null) {
+            value.addNull();
+        } else if (output instanceof Boolean) {
+            value.add((Boolean) output);
+        } else if (output instanceof Integer || output instanceof Long) {
+            value.add(((Number) output).longValue());
+        } else if (output instanceof Number) {
+            double number = ((Number) output).doubleValue();
+            if (!Double.isFinite(number)) {
+                throw new IllegalArgumentException("Output is not a finite number: " + output);
+            }
+            value.add(number);
+        } else if (output instanceof Date) {
+            value.add(((Date) output).getTime());
+        } else {
+            value.add(output.toString());
+        }
+        // javax.json 1.0 has no factory for single values, so they are built as the only element of an array
+        return value.build().get(0);
+    }
+
+    /**
+     * @return <code>{"error": "...", "input": ..., "type": ..., "value": ...}</code> naming the rejected input
+     */
+    public static JsonObjectBuilder error(InvalidInputException e) {
+        return error(e.getMessage()).add("input", e.getInput()).add("type", e.getType()).add("value", e.getValue());
+    }
+
+    public static JsonObjectBuilder error(String message) {
+        return Json.createObjectBuilder().add("error", message);
+    }
+}
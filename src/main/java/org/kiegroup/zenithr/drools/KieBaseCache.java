@@ -0,0 +1,147 @@
+package org.kiegroup.zenithr.drools;
+
+import org.drools.core.common.DroolsObjectInputStream;
+import org.drools.core.common.DroolsObjectOutputStream;
+import org.kie.api.KieBase;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Directory of serialized KieBases, one file per compiled spec. Entries are named after a hash of the generated DRL,
+ * the build mode and the Drools version, so a changed spec or upgraded engine never picks up a stale entry.
+ */
+class KieBaseCache {
+    static final String CACHE_DIR = "zenithr.cache.dir";
+    private static final String SUFFIX = ".kbase";
+    private final Path directory;
+
+    private KieBaseCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cache configured through the <code>zenithr.cache.dir</code> system property, or null if caching is
+     * disabled
+     */
+    static KieBaseCache fromSystemProperties() {
+        String directory = System.getProperty(CACHE_DIR);
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        return new KieBaseCache(Paths.get(directory));
+    }
+
+    static String getKey(String drl, String buildMode) {
+        String droolsVersion = KieBase.class.getPackage().getImplementationVersion();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(droolsVersion).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(buildMode.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(drl.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads a cached KieBase through a memory-mapped view of its file. An entry that cannot be read is deleted so
+     * the caller recompiles and replaces it.
+     *
+     * @return the cached KieBase, or null on a miss or a corrupt entry
+     */
+    KieBase load(String key) {
+        Path file = directory.resolve(key + SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ClassLoader classLoader = SessionFactory.class.getClassLoader();
+            try (ObjectInputStream in = new DroolsObjectInputStream(new ByteBufferInputStream(buffer), classLoader)) {
+                return (KieBase) in.readObject();
+            }
+        } catch (Exception e) {
+            System.out.println("Discarding unreadable cached KieBase " + file + ": " + e);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writes the KieBase to a temporary file and moves it into place, so concurrent readers never see a partial entry.
+     * Failures are logged and otherwise ignored; the service works without the cache.
+     */
+    void store(String key, KieBase kieBase) {
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, key, ".tmp");
+            try (ObjectOutputStream out = new DroolsObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeObject(kieBase);
+            }
+            Files.move(temp, directory.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            System.out.println("Could not cache KieBase in " + directory + ": " + e);
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
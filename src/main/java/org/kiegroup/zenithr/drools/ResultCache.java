@@ -0,0 +1,185 @@
+package org.kiegroup.zenithr.drools;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of outputs keyed by the typed input values, with optional expiry. Entries are spread over
+ * independently locked segments so concurrent requests rarely contend. A cache belongs to one compiled spec, so
+ * recompiling the spec starts with an empty cache.
+ */
+public class ResultCache {
+    private static final int SEGMENTS = 16;
+    private static final Object NULL = new Object();
+    private final Segment[] segments;
+    private final long ttlMillis;
+    private final int maxSize;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    ResultCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        int segmentCount = Math.min(SEGMENTS, maxSize);
+        this.segments = new Segment[segmentCount];
+        for (int index = 0; index < segmentCount; index++) {
+            int segmentSize = maxSize / segmentCount + (index < maxSize % segmentCount ? 1 : 0);
+            segments[index] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * Returns the cached output for these input values, or evaluates and caches it. Null outputs are cached too;
+     * exceptions are not.
+     */
+    Object get(Object[] values, Supplier<Object> evaluation) {
+        Key key = new Key(values);
+        Segment segment = segments[(key.hash & 0x7FFFFFFF) % segments.length];
+        Object cached = segment.get(key);
+        if (cached != null) {
+            hitCount.incrementAndGet();
+            return cached == NULL ? null : cached;
+        }
+        missCount.incrementAndGet();
+        Object output = evaluation.get();
+        segment.put(key, output == null ? NULL : output);
+        return output;
+    }
+
+    /**
+     * Drops every entry, such as when the spec it belongs to is unloaded and its outputs must not be held any longer.
+     */
+    void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private static class Key {
+        private final Object[] values;
+        private final int hash;
+
+        Key(Object[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && hash == ((Key) o).hash && Arrays.equals(values, ((Key) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Entry {
+        private final Object output;
+        private final long expiresAt;
+
+        Entry(Object output, long expiresAt) {
+            this.output = output;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private class Segment {
+        private final int maxSize;
+        private final LinkedHashMap<Key, Entry> entries;
+        private long nextPurge;
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+            this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    if (size() > Segment.this.maxSize) {
+                        evictionCount.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized Object get(Key key) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (ttlMillis > 0 && System.currentTimeMillis() > entry.expiresAt) {
+                entries.remove(key);
+                evictionCount.incrementAndGet();
+                return null;
+            }
+            return entry.output;
+        }
+
+        synchronized void put(Key key, Object output) {
+            long expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+            entries.put(key, new Entry(output, expiresAt));
+            if (ttlMillis > 0 && expiresAt - ttlMillis >= nextPurge) {
+                purgeExpired(expiresAt - ttlMillis);
+            }
+        }
+
+        /**
+         * Drops every expired entry, so entries nobody asks for again do not hold memory until the segment fills up.
+         * Access order says nothing about expiry, since a recently read entry may be the oldest written, so the whole
+         * segment is scanned, at most once per TTL or second, whichever is shorter.
+         */
+        private void purgeExpired(long now) {
+            nextPurge = now + Math.min(ttlMillis, 1000);
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (now > iterator.next().expiresAt) {
+                    iterator.remove();
+                    evictionCount.incrementAndGet();
+                }
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
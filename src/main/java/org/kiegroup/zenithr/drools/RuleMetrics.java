@@ -0,0 +1,112 @@
+package org.kiegroup.zenithr.drools;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rule firing counts and per-phase request timings, published through MicroProfile Metrics. Nothing is recorded until
+ * a registry is set at startup, so tests and benchmarks do not even read the clock, nor for synthetic evaluations run
+ * through {@link #unrecorded(Runnable)}.
+ */
+public class RuleMetrics {
+
+    public enum Phase {
+        PARSE, FACTS, SESSION, INSERT, FIRE, EXTRACT, SERIALIZE
+    }
+
+    private static volatile MetricRegistry registry;
+    private static volatile Histogram[] histograms;
+    private static final ThreadLocal<Boolean> UNRECORDED = new ThreadLocal<>();
+
+    public static synchronized void setRegistry(MetricRegistry metricRegistry) {
+        Histogram[] phaseHistograms = new Histogram[Phase.values().length];
+        for (Phase phase : Phase.values()) {
+            String name = "zenithr.phase." + phase.name().toLowerCase(Locale.ROOT);
+            Metadata metadata = new Metadata(name, MetricType.HISTOGRAM, MetricUnits.NANOSECONDS);
+            metadata.setDescription("Time spent in the " + phase.name().toLowerCase(Locale.ROOT) + " phase of a request");
+            phaseHistograms[phase.ordinal()] = metricRegistry.histogram(metadata);
+        }
+        registry = metricRegistry;
+        histograms = phaseHistograms;
+    }
+
+    /**
+     * @return the start time to pass to {@link #record(Phase, long)}, or 0 when metrics and tracing are off
+     */
+    public static long start() {
+        if (histograms == null && !Diagnostics.isEnabled()) {
+            return 0;
+        }
+        return UNRECORDED.get() == null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Runs the action on the current thread without recording its phase timings or rule firings, so evaluations that
+     * serve no request, such as the warm-up, do not show up in the metrics.
+     */
+    static void unrecorded(Runnable action) {
+        UNRECORDED.set(Boolean.TRUE);
+        try {
+            action.run();
+        } finally {
+            UNRECORDED.remove();
+        }
+    }
+
+    public static void record(Phase phase, long start) {
+        if (start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        Histogram[] phaseHistograms = histograms;
+        if (phaseHistograms != null) {
+            phaseHistograms[phase.ordinal()].update(nanos);
+        }
+        Diagnostics.record(phase, nanos);
+    }
+
+    /**
+     * @return a listener counting the firings of each rule of this service, to share between all of its sessions, or
+     * null when metrics are off
+     */
+    static AgendaEventListener newFiringCounter(String serviceName) {
+        MetricRegistry metricRegistry = registry;
+        return metricRegistry == null ? null : new FiringCounter(metricRegistry, serviceName);
+    }
+
+    private static class FiringCounter extends DefaultAgendaEventListener {
+        private final MetricRegistry metricRegistry;
+        private final String prefix;
+        private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+        FiringCounter(MetricRegistry metricRegistry, String serviceName) {
+            this.metricRegistry = metricRegistry;
+            this.prefix = "zenithr.rule.fired." + serviceName + ".";
+        }
+
+        @Override
+        public void afterMatchFired(AfterMatchFiredEvent event) {
+            if (UNRECORDED.get() != null) {
+                return;
+            }
+            String ruleName = event.getMatch().getRule().getName();
+            // plain get first, since computeIfAbsent locks even when the counter exists
+            Counter counter = counters.get(ruleName);
+            if (counter == null) {
+                counter = counters.computeIfAbsent(ruleName, name -> metricRegistry.counter(prefix + name));
+            }
+            counter.inc();
+        }
+    }
+}
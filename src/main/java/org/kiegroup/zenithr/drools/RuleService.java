@@ -1,27 +1,272 @@
 package org.kiegroup.zenithr.drools;
 
 import org.kie.api.runtime.KieSession;
+import org.kiegroup.zenithr.direct.DirectEvaluator;
+import org.kiegroup.zenithr.direct.HitPolicy;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.StringJoiner;
 
 public class RuleService {
     public static Object getOutput(Map<String, String[]> parameters) {
+        return getOutput(SessionFactory.getInstance(), parameters);
+    }
+
+    /**
+     * @return the output, or null if no rule matched
+     * @throws InvalidInputException if an input does not parse, before any rule is evaluated
+     * @throws RuntimeException      if the evaluation fails, such as when more than one rule matched under the unique
+     *                               hit policy
+     */
+    public static Object getOutput(SessionFactory sessionFactory, Map<String, String[]> parameters) {
+        Diagnostics.Trace trace = Diagnostics.begin(sessionFactory);
         try {
-            SessionFactory sessionFactory = SessionFactory.getInstance();
-            KieSession kieSession = sessionFactory.newKieSession();
-            List<FactField> facts = sessionFactory.getFacts(parameters);
-            for (FactField fact : facts) {
-                kieSession.insert(fact);
-            }
-            FactField output = new FactField();
-            output.setName("output");
-            kieSession.insert(output);
-            kieSession.fireAllRules();
-            return sessionFactory.getOutputObject(output);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+            long start = RuleMetrics.start();
+            Object[] values = sessionFactory.getValues(parameters);
+            RuleMetrics.record(RuleMetrics.Phase.PARSE, start);
+            ResultCache resultCache = sessionFactory.getResultCache();
+            if (resultCache != null) {
+                return resultCache.get(values, () -> evaluate(sessionFactory, values));
+            }
+            return evaluate(sessionFactory, values);
+        } finally {
+            Diagnostics.end(trace, parameters);
+        }
+    }
+
+    /**
+     * Evaluates each row against a single borrowed session, resetting it between rows. A row that fails is reported
+     * in its own result and does not affect the others.
+     */
+    public static List<EvaluationResult> getOutputs(List<Map<String, String[]>> rows) {
+        return getOutputs(SessionFactory.getInstance(), rows);
+    }
+
+    public static List<EvaluationResult> getOutputs(SessionFactory sessionFactory, List<Map<String, String[]>> rows) {
+        ResultCache resultCache = sessionFactory.getResultCache();
+        List<EvaluationResult> results = new ArrayList<>(rows.size());
+        try (Batch batch = new Batch(sessionFactory)) {
+            for (Map<String, String[]> row : rows) {
+                Diagnostics.Trace trace = Diagnostics.begin(sessionFactory);
+                try {
+                    long start = RuleMetrics.start();
+                    Object[] values = sessionFactory.getValues(row);
+                    RuleMetrics.record(RuleMetrics.Phase.PARSE, start);
+                    Object output;
+                    if (resultCache != null) {
+                        output = resultCache.get(values, () -> batch.evaluate(values));
+                    } else {
+                        output = batch.evaluate(values);
+                    }
+                    results.add(EvaluationResult.success(output));
+                } catch (RuntimeException e) {
+                    results.add(EvaluationResult.failure(e));
+                } finally {
+                    Diagnostics.end(trace, row);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Evaluates rows of values that are already typed, such as those of a binary request, the same way as
+     * {@link #getOutputs(SessionFactory, List)} but without parsing.
+     */
+    public static List<EvaluationResult> getOutputsForValues(SessionFactory sessionFactory, List<Object[]> rows) {
+        ResultCache resultCache = sessionFactory.getResultCache();
+        List<EvaluationResult> results = new ArrayList<>(rows.size());
+        try (Batch batch = new Batch(sessionFactory)) {
+            for (Object[] values : rows) {
+                Diagnostics.Trace trace = Diagnostics.begin(sessionFactory);
+                try {
+                    Object output;
+                    if (resultCache != null) {
+                        output = resultCache.get(values, () -> batch.evaluate(values));
+                    } else {
+                        output = batch.evaluate(values);
+                    }
+                    results.add(EvaluationResult.success(output));
+                } catch (RuntimeException e) {
+                    results.add(EvaluationResult.failure(e));
+                } finally {
+                    Diagnostics.end(trace, sessionFactory.getInputNames(), values);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Evaluates rows given as columns, one primitive array per input in the order of
+     * {@link SessionFactory#getInputTypeMap()}: boolean[], int[], long[] or double[] to match the input type. Specs with
+     * the "auto" or "direct" engine that the direct evaluator compiles are evaluated a column at a time; the rest, including
+     * every spec left on the default "drools" engine, row by row.
+     *
+     * @throws IllegalArgumentException if a column is missing, does not match its input type or has a different length
+     */
+    public static List<EvaluationResult> getOutputsForColumns(SessionFactory sessionFactory, Object[] columns) {
+        double[][] primitives = sessionFactory.getPrimitiveColumns(columns);
+        int length = primitives.length == 0 ? 0 : primitives[0].length;
+        DirectEvaluator columnEvaluator = sessionFactory.getColumnEvaluator();
+        if (columnEvaluator != null) {
+            long start = RuleMetrics.start();
+            Object[] outputs = columnEvaluator.evaluateColumns(primitives, length);
+            RuleMetrics.record(RuleMetrics.Phase.FIRE, start);
+            if (outputs != null) {
+                List<EvaluationResult> results = new ArrayList<>(length);
+                for (Object output : outputs) {
+                    results.add(EvaluationResult.success(output));
+                }
+                return results;
+            }
+        }
+        return getOutputsForValues(sessionFactory, sessionFactory.getRows(columns, length));
+    }
+
+    static Object evaluate(SessionFactory sessionFactory, Object[] values) {
+        Object output = lookup(sessionFactory, values);
+        if (output != DecisionTable.MISS) {
+            return output;
+        }
+        DirectEvaluator directEvaluator = sessionFactory.getDirectEvaluator();
+        if (directEvaluator != null) {
+            return evaluate(directEvaluator, sessionFactory.getPrimitiveInputs(values));
+        }
+        long start = RuleMetrics.start();
+        List<Object> facts = sessionFactory.getFacts(values);
+        RuleMetrics.record(RuleMetrics.Phase.FACTS, start);
+        start = RuleMetrics.start();
+        KieSession kieSession = sessionFactory.borrowKieSession();
+        RuleMetrics.record(RuleMetrics.Phase.SESSION, start);
+        try {
+            output = evaluate(sessionFactory, kieSession, facts);
+            sessionFactory.releaseKieSession(kieSession);
+            return output;
+        } catch (RuntimeException e) {
+            sessionFactory.invalidateKieSession(kieSession);
+            throw e;
+        }
+    }
+
+    private static Object lookup(SessionFactory sessionFactory, Object[] values) {
+        DecisionTable decisionTable = sessionFactory.getDecisionTable();
+        if (decisionTable == null) {
+            return DecisionTable.MISS;
+        }
+        long start = RuleMetrics.start();
+        Object output = decisionTable.get(values);
+        RuleMetrics.record(RuleMetrics.Phase.FIRE, start);
+        return output;
+    }
+
+    private static Object evaluate(DirectEvaluator directEvaluator, double[] inputs) {
+        long start = RuleMetrics.start();
+        Object output = inputs == null ? null : directEvaluator.evaluate(inputs);
+        RuleMetrics.record(RuleMetrics.Phase.FIRE, start);
+        return output;
+    }
+
+    private static Object evaluate(SessionFactory sessionFactory, KieSession kieSession, List<Object> facts) {
+        long start = RuleMetrics.start();
+        for (Object fact : facts) {
+            kieSession.insert(fact);
+        }
+        FactField output = new FactField();
+        output.setName("output");
+        kieSession.insert(output);
+        RuleMetrics.record(RuleMetrics.Phase.INSERT, start);
+        return fire(sessionFactory, kieSession, output);
+    }
+
+    /**
+     * Fires the rules over the facts already in the session and extracts the output of the spec's hit policy: the
+     * output fact, or the hits the rules collected for the unique and collect policies.
+     *
+     * @throws IllegalStateException if more than one rule matched under the unique policy
+     */
+    static Object fire(SessionFactory sessionFactory, KieSession kieSession, FactField output) {
+        List<FactField> hits = null;
+        if (sessionFactory.collectsHits()) {
+            hits = new ArrayList<>();
+            kieSession.setGlobal(SessionFactory.HITS_GLOBAL, hits);
+        }
+        long start = RuleMetrics.start();
+        Diagnostics.fired(kieSession.fireAllRules());
+        RuleMetrics.record(RuleMetrics.Phase.FIRE, start);
+        start = RuleMetrics.start();
+        Object result = hits == null ? sessionFactory.getOutputObject(output) : getOutput(sessionFactory, hits);
+        RuleMetrics.record(RuleMetrics.Phase.EXTRACT, start);
+        return result;
+    }
+
+    private static Object getOutput(SessionFactory sessionFactory, List<FactField> hits) {
+        if (sessionFactory.getHitPolicy() == HitPolicy.COLLECT) {
+            List<Object> outputs = new ArrayList<>(hits.size());
+            for (FactField hit : hits) {
+                outputs.add(sessionFactory.getOutputObject(hit));
+            }
+            return Collections.unmodifiableList(outputs);
+        }
+        if (hits.size() > 1) {
+            StringJoiner names = new StringJoiner(", ");
+            for (FactField hit : hits) {
+                names.add(hit.getName());
+            }
+            throw new IllegalStateException("More than one rule matched: " + names);
+        }
+        return hits.isEmpty() ? null : sessionFactory.getOutputObject(hits.get(0));
+    }
+
+    /**
+     * Evaluates rows one after another on a session borrowed on first use and reset between rows. A row that throws
+     * during evaluation drops the session, and the next row borrows a fresh one.
+     */
+    private static class Batch implements AutoCloseable {
+        private final SessionFactory sessionFactory;
+        private KieSession kieSession;
+
+        Batch(SessionFactory sessionFactory) {
+            this.sessionFactory = sessionFactory;
+        }
+
+        Object evaluate(Object[] values) {
+            Object output = lookup(sessionFactory, values);
+            if (output != DecisionTable.MISS) {
+                return output;
+            }
+            DirectEvaluator directEvaluator = sessionFactory.getDirectEvaluator();
+            if (directEvaluator != null) {
+                return RuleService.evaluate(directEvaluator, sessionFactory.getPrimitiveInputs(values));
+            }
+            long start = RuleMetrics.start();
+            List<Object> facts = sessionFactory.getFacts(values);
+            RuleMetrics.record(RuleMetrics.Phase.FACTS, start);
+            if (kieSession == null) {
+                start = RuleMetrics.start();
+                kieSession = sessionFactory.borrowKieSession();
+                RuleMetrics.record(RuleMetrics.Phase.SESSION, start);
+            }
+            try {
+                output = RuleService.evaluate(sessionFactory, kieSession, facts);
+                sessionFactory.resetKieSession(kieSession);
+                return output;
+            } catch (RuntimeException e) {
+                sessionFactory.invalidateKieSession(kieSession);
+                kieSession = null;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (kieSession != null) {
+                sessionFactory.releaseKieSession(kieSession);
+                kieSession = null;
+            }
         }
     }
 }
@@ -1,55 +1,234 @@
 package org.kiegroup.zenithr.drools;
 
+import org.drools.modelcompiler.ExecutableModelProject;
+import org.kie.api.KieBase;
 import org.kie.api.KieServices;
 import org.kie.api.builder.KieBuilder;
 import org.kie.api.builder.KieFileSystem;
 import org.kie.api.builder.KieRepository;
 import org.kie.api.builder.Message;
+import org.kie.api.definition.type.FactType;
+import org.kie.api.event.rule.AgendaEventListener;
 import org.kie.api.runtime.KieContainer;
 import org.kie.api.runtime.KieSession;
+import org.kiegroup.zenithr.direct.DirectEvaluator;
+import org.kiegroup.zenithr.direct.HitPolicy;
 
 import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.lang.reflect.Array;
+import java.nio.file.Paths;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * One compiled spec: its inputs and output, the KieBase built from its rules and the sessions borrowed from it. The
+ * instance serving requests can be replaced at runtime with {@link #reload(String)}; callers that already hold an
+ * instance keep evaluating against it until they are done.
+ */
 public class SessionFactory {
-    private static final String PATTERN = "yyyy-mm-dd";
-    private static final DateFormat DATE_FORMAT = new SimpleDateFormat(PATTERN);
-    private static SessionFactory INSTANCE;
-    private KieContainer kieContainer;
-    private static String serviceName;
-    private static Map<String, String> inputTypeMap;
-    private static String outputType;
+    private static final String PATTERN = "yyyy-MM-dd";
+    private static final Pattern STRING_LITERAL = Pattern.compile("\"(?:[^\"\\\\]|\\\\.)*\"");
+    private static final Pattern IDENTIFIER = Pattern.compile("(?<![\\w$.])[A-Za-z_$][\\w$]*");
+    private static final String POOL_SIZE = "zenithr.pool.size";
+    private static final String POOL_TIMEOUT = "zenithr.pool.timeout";
+    private static final String RESULT_CACHE_SIZE = "zenithr.results.cache.size";
+    private static final String RESULT_CACHE_TTL = "zenithr.results.cache.ttl";
+    static final String BUILD_MODE = "zenithr.build.mode";
+    static final String DRL_MODE = "drl";
+    static final String EXECUTABLE_MODEL_MODE = "executable-model";
+    static final String FACT_MODEL = "zenithr.fact.model";
+    static final String TYPED_FACTS = "typed";
+    static final String GENERIC_FACTS = "generic";
+    private static final String PACKAGE = "org.kiegroup.zenithr.drools";
+    private static final String INPUT_TYPE = "Input";
+    static final String HITS_GLOBAL = "hits";
+    // every build deploys to the default release id and then reads it back, so builds must not interleave
+    private static final Object BUILD_LOCK = new Object();
+    private static final Object RELOAD_LOCK = new Object();
+    private static volatile SessionFactory INSTANCE;
+    private static volatile SpecRegistry REGISTRY;
+    private final String spec;
+    private final String serviceName;
+    private final Map<String, String> inputTypeMap;
+    private final String[] inputNames;
+    private final ValueType[] inputTypes;
+    private final String outputType;
+    private final ValueType outputValueType;
+    private final String schemaFingerprint;
+    private final HitPolicy hitPolicy;
+    private final String factModel;
+    private final DirectEvaluator directEvaluator;
+    private final DirectEvaluator columnEvaluator;
+    private final KieBase kieBase;
+    private final FactType inputFactType;
+    private final AgendaEventListener firingCounter;
+    private final ResultCache resultCache;
+    private final SessionPool sessionPool;
+    private final DecisionTable decisionTable;
+    private final String buildMode;
+    private final long buildMillis;
 
-    private SessionFactory(KieContainer kieContainer) {
-        this.kieContainer = kieContainer;
+    private SessionFactory(String spec, String buildMode) {
+        long start = System.nanoTime();
+        this.spec = spec;
+        this.buildMode = buildMode;
+        System.out.println(spec);
+        JsonObject specObject = Json.createReader(new StringReader(spec)).readObject();
+        this.serviceName = specObject.getString("name", "Zenithr");
+        this.inputTypeMap = getDataTypeMap(specObject.getJsonArray("input"));
+        this.inputNames = inputTypeMap.keySet().toArray(new String[0]);
+        this.inputTypes = new ValueType[inputNames.length];
+        for (int slot = 0; slot < inputNames.length; slot++) {
+            inputTypes[slot] = ValueType.of(inputTypeMap.get(inputNames[slot]));
+        }
+        this.outputType = specObject.getJsonObject("output").getString("type");
+        this.outputValueType = ValueType.of(outputType);
+        this.schemaFingerprint = BinaryRows.getFingerprint(inputTypeMap, outputType);
+        this.hitPolicy = HitPolicy.of(specObject.getString("hitPolicy", "last"));
+        this.factModel = System.getProperty(FACT_MODEL, TYPED_FACTS);
+        List<JsonObject> rules = specObject.getJsonArray("rules").getValuesAs(JsonObject.class);
+        String engine = specObject.getString("engine", "drools");
+        this.columnEvaluator = compileDirectEvaluator(engine, rules);
+        this.directEvaluator = getDirectEvaluator(engine, columnEvaluator);
+        String drl = getRules(rules);
+
+        KieBaseCache cache = KieBaseCache.fromSystemProperties();
+        String cacheKey = cache == null ? null : KieBaseCache.getKey(drl, buildMode);
+        KieBase kieBase = cache == null ? null : cache.load(cacheKey);
+        String source = "cache";
+        if (kieBase == null) {
+            kieBase = build(drl, buildMode);
+            source = buildMode + " mode";
+            if (cache != null) {
+                cache.store(cacheKey, kieBase);
+            }
+        }
+        this.kieBase = kieBase;
+        this.inputFactType = TYPED_FACTS.equals(factModel) ? kieBase.getFactType(PACKAGE, INPUT_TYPE) : null;
+        int poolSize = Integer.getInteger(POOL_SIZE, Runtime.getRuntime().availableProcessors() * 2);
+        long poolTimeout = Long.getLong(POOL_TIMEOUT, 5000L);
+        this.firingCounter = RuleMetrics.newFiringCounter(serviceName);
+        this.sessionPool = new SessionPool(kieBase, poolSize, poolTimeout, firingCounter);
+        int resultCacheSize = Integer.getInteger(RESULT_CACHE_SIZE, 0);
+        this.resultCache = resultCacheSize > 0 ? new ResultCache(resultCacheSize, Long.getLong(RESULT_CACHE_TTL, 0L)) : null;
+        this.decisionTable = getDecisionTable(specObject.getJsonArray("input"));
+        this.buildMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(String.format("Built %s rule service in %d ms from %s", serviceName, buildMillis, source));
     }
 
-    static void init() {
+    static SessionFactory compile(String spec) {
         System.setProperty("drools.dateformat", PATTERN);
+        return new SessionFactory(spec, System.getProperty(BUILD_MODE, DRL_MODE));
+    }
+
+    static void init() {
+        String spec = System.getProperty("GET");
+        if (spec == null) {
+            throw new IllegalStateException("No spec configured in GET");
+        }
+        install(compile(spec));
+    }
+
+    /**
+     * Compiles a new spec, checks that it evaluates, and only then makes it the instance returned by
+     * {@link #getInstance()}. Requests that started on the previous instance finish on it; its idle sessions are
+     * disposed right away and the borrowed ones as they are returned. If anything fails, the current spec stays in
+     * place and the exception is thrown to the caller.
+     */
+    public static SessionFactory reload(String spec) {
+        synchronized (RELOAD_LOCK) {
+            SessionFactory sessionFactory = compile(spec);
+            try {
+                sessionFactory.validate();
+            } catch (RuntimeException e) {
+                sessionFactory.sessionPool.close();
+                throw e;
+            }
+            System.setProperty("GET", spec);
+            install(sessionFactory);
+            return sessionFactory;
+        }
+    }
+
+    private static void install(SessionFactory sessionFactory) {
+        SessionFactory previous;
+        synchronized (SessionFactory.class) {
+            previous = INSTANCE;
+            INSTANCE = sessionFactory;
+        }
+        if (previous != null) {
+            previous.sessionPool.close();
+        }
+    }
+
+    /**
+     * Evaluates one row of default values, so a spec whose rules fail at runtime is rejected before it serves traffic
+     * and the first real request finds a warm session in the pool. Like the warm-up, it is left out of the metrics.
+     */
+    private void validate() {
+        Object[] values = new Object[inputTypeMap.size()];
+        int slot = 0;
+        for (String type : inputTypeMap.values()) {
+            values[slot++] = getDefaultValue(type);
+        }
+        RuleMetrics.unrecorded(() -> RuleService.evaluate(this, values));
+    }
+
+    private static Object getDefaultValue(String type) {
+        switch (type) {
+            case "boolean":
+                return false;
+            case "int":
+                return 0;
+            case "double":
+                return 0d;
+            case "long":
+                return 0L;
+            case "date":
+            case "datetime":
+                return new Date(0);
+            case "string":
+                return "";
+            default:
+                return null;
+        }
+    }
+
+    private static KieBase build(String drl, String buildMode) {
         KieServices ks = KieServices.Factory.get();
         KieRepository kr = ks.getRepository();
         KieFileSystem kfs = ks.newKieFileSystem();
 
-        kfs.write("src/main/resources/org/kiegroup/zenithr/drools/rule.drl", getRules());
+        kfs.write("src/main/resources/org/kiegroup/zenithr/drools/rule.drl", drl);
 
-        KieBuilder kb = ks.newKieBuilder(kfs);
+        synchronized (BUILD_LOCK) {
+            KieBuilder kb = ks.newKieBuilder(kfs);
 
-        kb.buildAll(); // kieModule is automatically deployed to KieRepository if successfully built.
-        if (kb.getResults().hasMessages(Message.Level.ERROR)) {
-            throw new RuntimeException("Build Errors:\n" + kb.getResults().toString());
-        }
+            // kieModule is automatically deployed to KieRepository if successfully built.
+            if (EXECUTABLE_MODEL_MODE.equals(buildMode)) {
+                // Rules are compiled to Java classes up front, so creating the KieBase needs no DRL parsing or MVEL
+                kb.buildAll(ExecutableModelProject.class);
+            } else if (DRL_MODE.equals(buildMode)) {
+                kb.buildAll();
+            } else {
+                throw new IllegalArgumentException("Unknown " + BUILD_MODE + ": " + buildMode);
+            }
+            if (kb.getResults().hasMessages(Message.Level.ERROR)) {
+                throw new RuntimeException("Build Errors:\n" + kb.getResults().toString());
+            }
 
-        KieContainer kieContainer = ks.newKieContainer(kr.getDefaultReleaseId());
-        INSTANCE = new SessionFactory(kieContainer);
+            KieContainer kieContainer = ks.newKieContainer(kr.getDefaultReleaseId());
+            return kieContainer.getKieBase();
+        }
     }
 
     public static SessionFactory getInstance() {
@@ -63,25 +242,181 @@ public class SessionFactory {
         return INSTANCE;
     }
 
+    /**
+     * @return the spec of the named service from the <code>zenithr.spec.dir</code> directory, compiled on first use, or
+     * null if no such spec exists
+     */
+    public static SessionFactory getInstance(String service) {
+        SpecRegistry registry = getRegistry();
+        return registry == null ? null : registry.get(service);
+    }
+
+    static SpecRegistry getRegistry() {
+        if (REGISTRY == null) {
+            String directory = System.getProperty(SpecRegistry.SPEC_DIR);
+            if (directory == null) {
+                return null;
+            }
+            synchronized (SessionFactory.class) {
+                if (REGISTRY == null) {
+                    SpecRegistry registry = new SpecRegistry(Paths.get(directory), Integer.getInteger(SpecRegistry.MAX_LOADED, 16));
+                    try {
+                        registry.watch();
+                    } catch (IOException e) {
+                        System.out.println("Not watching " + directory + ", changed or deleted specs stay loaded: " + e);
+                    }
+                    REGISTRY = registry;
+                }
+            }
+        }
+        return REGISTRY;
+    }
+
+    /**
+     * @return a session outside the pool, such as one kept by an {@link EvaluationSession}, counting its firings like
+     * the pooled ones
+     */
     KieSession newKieSession() {
-        return kieContainer.newKieSession();
+        KieSession kieSession = kieBase.newKieSession();
+        if (firingCounter != null) {
+            kieSession.addEventListener(firingCounter);
+        }
+        return kieSession;
+    }
+
+    KieSession borrowKieSession() {
+        return sessionPool.borrow();
     }
 
-    private static String getRules() {
+    void releaseKieSession(KieSession kieSession) {
+        sessionPool.release(kieSession);
+    }
+
+    void resetKieSession(KieSession kieSession) {
+        sessionPool.reset(kieSession);
+    }
+
+    void invalidateKieSession(KieSession kieSession) {
+        sessionPool.invalidate(kieSession);
+    }
+
+    public SessionPool getSessionPool() {
+        return sessionPool;
+    }
+
+    public String getBuildMode() {
+        return buildMode;
+    }
+
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+    public HitPolicy getHitPolicy() {
+        return hitPolicy;
+    }
+
+    private String getRules(List<JsonObject> rules) {
         StringWriter drl = new StringWriter();
         drl.append(RULE_HEADER);
-        String getJson = System.getProperty("GET");
-        System.out.println(getJson);
-        JsonObject spec = Json.createReader(new StringReader(getJson)).readObject();
-        serviceName = spec.getString("name", "Zenithr");
-        inputTypeMap = getDataTypeMap(spec.getJsonArray("input"));
-        outputType = spec.getJsonObject("output").getString("type");
-        List<JsonObject> rules = spec.getJsonArray("rules").getValuesAs(JsonObject.class);
-        drl.append(getRule(rules, outputType)).append('\n');
+        if (collectsHits()) {
+            drl.append("global java.util.List ").append(HITS_GLOBAL).append("\n\n");
+        }
+        if (TYPED_FACTS.equals(factModel)) {
+            drl.append(getInputDeclaration(inputTypeMap)).append('\n');
+            drl.append(getTypedRule(rules, outputType)).append('\n');
+        } else if (GENERIC_FACTS.equals(factModel)) {
+            drl.append(getRule(rules, outputType)).append('\n');
+        } else {
+            throw new IllegalArgumentException("Unknown " + FACT_MODEL + ": " + factModel);
+        }
         System.out.println(drl.toString());
         return drl.toString();
     }
 
+    /**
+     * Compiles the rules for evaluation outside the rule engine, unless the spec asks for Drools.
+     *
+     * @return the compiled rules, or null if the spec uses an input type, output type or expression the direct
+     * evaluator does not support
+     */
+    private DirectEvaluator compileDirectEvaluator(String engine, List<JsonObject> rules) {
+        if ("drools".equals(engine)) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        List<String> whens = new ArrayList<>();
+        List<String> thens = new ArrayList<>();
+        for (int index = 0; index < rules.size(); index++) {
+            JsonObject ruleObject = rules.get(index);
+            names.add(ruleObject.getString("name", "rule" + (index + 1)));
+            whens.add(ruleObject.getString("when"));
+            thens.add(ruleObject.getJsonObject("then").getString("output"));
+        }
+        try {
+            return DirectEvaluator.compile(names, whens, thens, inputTypeMap, outputType, hitPolicy);
+        } catch (RuntimeException e) {
+            if ("direct".equals(engine)) {
+                System.out.println("Spec cannot use the direct engine, falling back to Drools: " + e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Picks the evaluator for single rows. With the opt-in "auto" engine the compiled rules are only used when every
+     * rule is a range over the same numeric input, so the matching rule can be found in an interval index.
+     *
+     * @return the evaluator to use instead of Drools, or null to use Drools
+     */
+    private static DirectEvaluator getDirectEvaluator(String engine, DirectEvaluator evaluator) {
+        if (evaluator == null) {
+            return null;
+        }
+        if ("direct".equals(engine) || evaluator.isIndexed()) {
+            System.out.println("Evaluating rules without Drools" + (evaluator.isIndexed() ? " using an interval index" : ""));
+            return evaluator;
+        }
+        return null;
+    }
+
+    /**
+     * Evaluates every combination of input values up front when each input is a boolean or lists its possible
+     * <code>values</code> in the spec, and there are no more combinations than <code>zenithr.table.max</code>.
+     *
+     * @return the precomputed outputs, or null if the input domain is not finite or too large
+     */
+    private DecisionTable getDecisionTable(JsonArray inputs) {
+        int maxSize = Integer.getInteger(DecisionTable.MAX_SIZE, 4096);
+        List<List<Object>> domains = new ArrayList<>();
+        List<JsonObject> entries = inputs.getValuesAs(JsonObject.class);
+        for (int slot = 0; slot < entries.size(); slot++) {
+            JsonObject entry = entries.get(slot);
+            Set<Object> domain = new LinkedHashSet<>();
+            if (inputTypes[slot] == ValueType.BOOLEAN) {
+                domain.add(false);
+                domain.add(true);
+            } else if (entry.containsKey("values")) {
+                for (JsonValue value : entry.getJsonArray("values")) {
+                    String text = value.getValueType() == JsonValue.ValueType.STRING ? ((JsonString) value).getString() : value.toString();
+                    Object parsed = parseValue(slot, text);
+                    if (parsed == null) {
+                        throw new InvalidInputException(inputNames[slot], inputTypes[slot].toString(), text);
+                    }
+                    domain.add(parsed);
+                }
+            } else {
+                return null;
+            }
+            domains.add(new ArrayList<>(domain));
+        }
+        DecisionTable table = maxSize > 0 ? DecisionTable.build(this, domains, maxSize) : null;
+        if (table != null) {
+            System.out.println(String.format("Precomputed all %d outputs of %s in a decision table", table.size(), serviceName));
+        }
+        return table;
+    }
+
     private static Map<String, String> getDataTypeMap(JsonArray jsonArray) {
         Map<String, String> dataTypeMap = new LinkedHashMap<>();
         for (JsonObject entry : jsonArray.getValuesAs(JsonObject.class)) {
@@ -90,14 +425,14 @@ public class SessionFactory {
         return dataTypeMap;
     }
 
-    private static String getRule(List<JsonObject> rules, String outputType) {
+    private String getRule(List<JsonObject> rules, String outputType) {
         StringWriter ruleString = new StringWriter();
         String ruleTemplate = "FactField(name == \"%s\", %s: %s%s)\n";
         for (int index = 0; index < rules.size(); index++) {
             JsonObject ruleObject = rules.get(index);
             String when = ruleObject.getString("when");
             String name = ruleObject.getString("name", "rule" + (index + 1));
-            ruleString.append("rule ").append('"').append(name).append('"').append(" when").append('\n');
+            ruleString.append("rule ").append('"').append(name).append('"').append(getSalience(rules, index)).append(" when").append('\n');
             String[] inputs = getSortedInputs(inputTypeMap);
             for (int inputIndex = 0; inputIndex < inputs.length; inputIndex++) {
                 String input = inputs[inputIndex];
@@ -110,13 +445,96 @@ public class SessionFactory {
             }
             ruleString.append('\t').append( String.format("output: FactField(name == \"%s\")\n", "output") );
             ruleString.append("then \n");
+            ruleString.append(getConsequence(name, ruleObject.getJsonObject("then").getString("output")));
+            ruleString.append("end").append('\n');
+        }
+        return ruleString.toString();
+    }
+
+    /**
+     * Orders the rules of every policy but the default one by declaration, highest first, so the engine fires them in
+     * the order the spec lists them.
+     */
+    private String getSalience(List<JsonObject> rules, int index) {
+        return hitPolicy == HitPolicy.LAST ? "" : " salience " + (rules.size() - index);
+    }
+
+    /**
+     * Sets the output, and with the first policy halts the engine so no later rule is tried. Under the unique and
+     * collect policies each match is instead added to the <code>hits</code> global as a fact named after its rule.
+     */
+    private String getConsequence(String name, String output) {
+        String setter = getSetter(outputType) + '(' + getValue(outputType, output) + ");\n";
+        if (collectsHits()) {
+            return "\tFactField hit = new FactField();\n" +
+                    "\thit.setName(\"" + name + "\");\n" +
+                    "\thit." + setter +
+                    "\t" + HITS_GLOBAL + ".add(hit);\n";
+        }
+        String consequence = "\toutput." + setter;
+        if (hitPolicy == HitPolicy.FIRST) {
+            consequence += "\tdrools.halt();\n";
+        }
+        return consequence;
+    }
+
+    boolean collectsHits() {
+        return hitPolicy == HitPolicy.UNIQUE || hitPolicy == HitPolicy.COLLECT;
+    }
+
+    /**
+     * Declares one type holding every input as a field, so each rule is a single pattern over one fact instead of a
+     * join across one generic FactField per input.
+     */
+    private static String getInputDeclaration(Map<String, String> inputTypeMap) {
+        StringWriter declaration = new StringWriter();
+        declaration.append("declare ").append(INPUT_TYPE).append('\n');
+        // lets an update name the inputs that changed, so only the patterns constraining or binding them are evaluated
+        // again; rules bind just the inputs they refer to
+        declaration.append("\t@propertyReactive\n");
+        for (Map.Entry<String, String> entry : inputTypeMap.entrySet()) {
+            declaration.append('\t').append(entry.getKey()).append(" : ").append(getJavaType(entry.getValue())).append('\n');
+        }
+        declaration.append("end").append('\n');
+        return declaration.toString();
+    }
+
+    private String getTypedRule(List<JsonObject> rules, String outputType) {
+        StringWriter ruleString = new StringWriter();
+        for (int index = 0; index < rules.size(); index++) {
+            JsonObject ruleObject = rules.get(index);
+            String when = ruleObject.getString("when");
+            String name = ruleObject.getString("name", "rule" + (index + 1));
+            ruleString.append("rule ").append('"').append(name).append('"').append(getSalience(rules, index)).append(" when").append('\n');
             String output = ruleObject.getJsonObject("then").getString("output");
-            ruleString.append("\t").append("output.").append(getSetter(outputType)).append('(').append(getValue(outputType, output)).append(");\n");
+            ruleString.append('\t').append(INPUT_TYPE).append('(');
+            for (String input : getReferencedInputs(when + ' ' + output)) {
+                ruleString.append(input).append(": ").append(input).append(", ");
+            }
+            ruleString.append(when).append(")\n");
+            ruleString.append('\t').append( String.format("output: FactField(name == \"%s\")\n", "output") );
+            ruleString.append("then \n");
+            ruleString.append(getConsequence(name, output));
             ruleString.append("end").append('\n');
         }
         return ruleString.toString();
     }
 
+    /**
+     * Names the inputs an expression refers to, skipping string literals and members reached with a dot. Only these are
+     * bound in a rule's pattern, as binding an input makes the pattern react to every change of it.
+     */
+    private Set<String> getReferencedInputs(String expression) {
+        Set<String> inputs = new TreeSet<>();
+        Matcher matcher = IDENTIFIER.matcher(STRING_LITERAL.matcher(expression).replaceAll("\"\""));
+        while (matcher.find()) {
+            if (inputTypeMap.containsKey(matcher.group())) {
+                inputs.add(matcher.group());
+            }
+        }
+        return inputs;
+    }
+
     static String[] getSortedInputs(Map<String, String> inputTypeMap) {
         String[] inputs = inputTypeMap.keySet().toArray(new String[]{});
         Arrays.sort(inputs, (o1, o2) -> {
@@ -163,6 +581,23 @@ public class SessionFactory {
         }
     }
 
+    private static String getJavaType(String type) {
+        switch (type) {
+            case "boolean":
+            case "int":
+            case "double":
+            case "long":
+                return type;
+            case "date":
+            case "datetime":
+                return "java.util.Date";
+            case "string":
+                return "String";
+            default:
+                return null;
+        }
+    }
+
     private static String getFieldName(String type) {
         switch (type) {
             case "boolean":
@@ -184,71 +619,233 @@ public class SessionFactory {
         }
     }
 
-    List<FactField> getFacts(Map<String, String[]> parameters) {
-        List<FactField> list = new ArrayList<>();
-        for (Map.Entry<String, String> entry : inputTypeMap.entrySet()) {
-            String name = entry.getKey();
-            String[] paramValues = parameters.get(name);
-            if (paramValues != null) {
-                FactField factField = getFact(entry.getValue(), paramValues[0]);
-                factField.setName(name);
-                list.add(factField);
+    /**
+     * @return the typed value of each input, in input order, with null for inputs that are missing or empty
+     * @throws InvalidInputException if any input does not parse as its type
+     */
+    Object[] getValues(Map<String, String[]> parameters) {
+        Object[] values = new Object[inputNames.length];
+        for (int slot = 0; slot < inputNames.length; slot++) {
+            String[] paramValues = parameters.get(inputNames[slot]);
+            if (paramValues != null && paramValues.length > 0) {
+                values[slot] = parseValue(slot, paramValues[0]);
             }
         }
-        return list;
+        return values;
     }
 
-    private FactField getFact(String type, String value) {
-        FactField factField = new FactField();
+    private Object parseValue(int slot, String text) {
         try {
-            switch (type) {
-                case "boolean":
-                    factField.setBooleanValue(Boolean.parseBoolean(value));
-                    break;
-                case "int":
-                    factField.setIntValue(Integer.parseInt(value));
-                    break;
-                case "double":
-                    factField.setDoubleValue(Double.parseDouble(value));
-                    break;
-                case "long":
-                    factField.setLongValue(Long.parseLong(value));
-                    break;
-                case "date":
-                    factField.setDateValue(DATE_FORMAT.parse(value));
-                    break;
-                case "datetime":
-                    factField.setDateValue(new Date(LocalDateTime.parse(value).toEpochSecond(ZoneOffset.UTC)));
-                    break;
-                case "string":
-                    factField.setStringValue(value);
-                    break;
+            return inputTypes[slot].parse(text);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidInputException(inputNames[slot], inputTypes[slot].toString(), text);
+        }
+    }
+
+    List<Object> getFacts(Map<String, String[]> parameters) {
+        return getFacts(getValues(parameters));
+    }
+
+    /**
+     * @return the facts to insert for one evaluation: a single typed input, or one FactField per input in the generic
+     * fact model. The typed input is only returned once every input has a valid value, since no rule can match before.
+     */
+    List<Object> getFacts(Object[] values) {
+        if (inputFactType != null) {
+            return getTypedFacts(values);
+        }
+        List<Object> list = new ArrayList<>();
+        for (int slot = 0; slot < inputNames.length; slot++) {
+            if (values[slot] != null) {
+                list.add(getFactField(slot, values[slot]));
             }
-        } catch (NumberFormatException | ParseException e) {
-            e.printStackTrace();
         }
+        return list;
+    }
+
+    boolean hasTypedFacts() {
+        return inputFactType != null;
+    }
+
+    /**
+     * @return the generic fact holding the value of the input in this slot
+     */
+    FactField getFactField(int slot, Object value) {
+        FactField factField = new FactField();
+        factField.setName(inputNames[slot]);
+        inputTypes[slot].set(factField, value);
         return factField;
     }
 
-    Object getOutputObject(FactField output) {
-        switch (outputType) {
-            case "boolean":
-                return output.getBooleanValue();
-            case "int":
-                return output.getIntValue();
-            case "double":
-                return output.getDoubleValue();
-            case "long":
-                return output.getLongValue();
-            case "date":
-                return output.getDateValue();
-            case "datetime":
-                return output.getDateValue();
-            case "string":
-                return output.getStringValue();
-            default:
+    /**
+     * @return the name of the FactField property that holds the value of the input in this slot
+     */
+    String getFactFieldProperty(int slot) {
+        return getFieldName(inputTypeMap.get(inputNames[slot]));
+    }
+
+    private List<Object> getTypedFacts(Object[] values) {
+        Object input = newTypedInput();
+        for (int slot = 0; slot < inputNames.length; slot++) {
+            if (values[slot] == null) {
+                return Collections.emptyList();
+            }
+            setTypedInput(input, slot, values[slot]);
+        }
+        return Collections.singletonList(input);
+    }
+
+    /**
+     * @return a blank instance of the declared input type, for specs with typed facts
+     */
+    Object newTypedInput() {
+        try {
+            return inputFactType.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    void setTypedInput(Object input, int slot, Object value) {
+        inputFactType.set(input, inputNames[slot], value);
+    }
+
+    /**
+     * @return one value per input in input order, with booleans as 0 or 1, or null if any input is missing or invalid
+     */
+    double[] getPrimitiveInputs(Object[] values) {
+        double[] inputs = new double[values.length];
+        for (int slot = 0; slot < values.length; slot++) {
+            Object value = values[slot];
+            if (value instanceof Boolean) {
+                inputs[slot] = (Boolean) value ? 1 : 0;
+            } else if (value instanceof Number) {
+                inputs[slot] = ((Number) value).doubleValue();
+            } else {
                 return null;
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * @param columns one array per input in input order: boolean[] for boolean inputs, int[], long[] or double[] for
+     *                numbers, all of the same length
+     * @return the columns as doubles, with booleans as 0 or 1
+     * @throws IllegalArgumentException if a column is missing, does not match the type of its input or has a
+     *                                  different length
+     */
+    double[][] getPrimitiveColumns(Object[] columns) {
+        if (columns.length != inputNames.length) {
+            throw new IllegalArgumentException("Expected " + inputNames.length + " columns, got " + columns.length);
+        }
+        int length = -1;
+        double[][] primitives = new double[columns.length][];
+        for (int slot = 0; slot < columns.length; slot++) {
+            double[] primitive = toDoubles(inputTypes[slot], columns[slot]);
+            if (primitive == null) {
+                throw new IllegalArgumentException("Column " + inputNames[slot] + " does not match input type " + inputTypes[slot]);
+            }
+            if (length >= 0 && primitive.length != length) {
+                throw new IllegalArgumentException("Column " + inputNames[slot] + " has " + primitive.length + " rows, expected " + length);
+            }
+            length = primitive.length;
+            primitives[slot] = primitive;
+        }
+        return primitives;
+    }
+
+    private static double[] toDoubles(ValueType type, Object column) {
+        double[] primitive;
+        if (type == ValueType.BOOLEAN && column instanceof boolean[]) {
+            boolean[] booleans = (boolean[]) column;
+            primitive = new double[booleans.length];
+            for (int row = 0; row < booleans.length; row++) {
+                primitive[row] = booleans[row] ? 1 : 0;
+            }
+        } else if (type == ValueType.INT && column instanceof int[]) {
+            int[] ints = (int[]) column;
+            primitive = new double[ints.length];
+            for (int row = 0; row < ints.length; row++) {
+                primitive[row] = ints[row];
+            }
+        } else if (type == ValueType.LONG && column instanceof long[]) {
+            long[] longs = (long[]) column;
+            primitive = new double[longs.length];
+            for (int row = 0; row < longs.length; row++) {
+                primitive[row] = longs[row];
+            }
+        } else if (type == ValueType.DOUBLE && column instanceof double[]) {
+            primitive = ((double[]) column).clone();
+        } else {
+            return null;
+        }
+        return primitive;
+    }
+
+    /**
+     * @param columns columns already checked by {@link #getPrimitiveColumns(Object[])}
+     * @return the rows of the given columns as typed values, as a binary request would carry them
+     */
+    List<Object[]> getRows(Object[] columns, int length) {
+        List<Object[]> rows = new ArrayList<>(length);
+        for (int row = 0; row < length; row++) {
+            Object[] values = new Object[columns.length];
+            for (int slot = 0; slot < columns.length; slot++) {
+                values[slot] = Array.get(columns[slot], row);
+            }
+            rows.add(values);
         }
+        return rows;
+    }
+
+    DecisionTable getDecisionTable() {
+        return decisionTable;
+    }
+
+    /**
+     * @return the number of precomputed outputs, or 0 if the spec is evaluated on every request
+     */
+    public int getDecisionTableSize() {
+        return decisionTable == null ? 0 : decisionTable.size();
+    }
+
+    DirectEvaluator getDirectEvaluator() {
+        return directEvaluator;
+    }
+
+    /**
+     * @return the rules compiled for evaluation a column at a time, or null if only Drools can evaluate the spec
+     */
+    DirectEvaluator getColumnEvaluator() {
+        return columnEvaluator;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    Object getOutputObject(FactField output) {
+        return outputValueType.get(output);
+    }
+
+    String[] getInputNames() {
+        return inputNames;
+    }
+
+    ValueType[] getInputTypes() {
+        return inputTypes;
+    }
+
+    ValueType getOutputValueType() {
+        return outputValueType;
+    }
+
+    /**
+     * @return the fingerprint binary callers must send, which changes whenever the inputs or the output type change
+     */
+    public String getSchemaFingerprint() {
+        return schemaFingerprint;
     }
 
     public Map<String, String> getInputTypeMap() {
@@ -259,6 +856,10 @@ public class SessionFactory {
         return serviceName;
     }
 
+    public String getSpec() {
+        return spec;
+    }
+
     private static final String RULE_HEADER =
             "" +
                     "package org.kiegroup.zenithr.drools \n\n" +
@@ -0,0 +1,205 @@
+package org.kiegroup.zenithr.drools;
+
+import org.kie.api.KieBase;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of stateful sessions. Sessions are created lazily up to the maximum size, handed out clean, and wiped
+ * of all facts when returned so the next borrower can reuse them.
+ */
+public class SessionPool {
+    private final KieBase kieBase;
+    private final AgendaEventListener listener;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final BlockingQueue<KieSession> idle;
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * @param listener attached to every session the pool creates, or null
+     */
+    SessionPool(KieBase kieBase, int maxSize, long borrowTimeoutMillis, AgendaEventListener listener) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Session pool size must be positive: " + maxSize);
+        }
+        this.kieBase = kieBase;
+        this.listener = listener;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    /**
+     * Hands out an idle session, creates one if the pool is not full, or waits for one to be returned. Once the pool
+     * is closed, e.g. because its spec was replaced while a request was in flight, every borrow gets a new session
+     * that is disposed on return.
+     */
+    KieSession borrow() {
+        if (closed) {
+            KieSession kieSession = newKieSession();
+            created.incrementAndGet();
+            active.incrementAndGet();
+            return kieSession;
+        }
+        KieSession kieSession = idle.poll();
+        if (kieSession == null) {
+            kieSession = create();
+        }
+        if (kieSession == null) {
+            waitCount.incrementAndGet();
+            try {
+                kieSession = idle.poll(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a session", e);
+            }
+            if (kieSession == null) {
+                timeoutCount.incrementAndGet();
+                throw new RuntimeException("Timed out after " + borrowTimeoutMillis + "ms waiting for one of " + maxSize + " sessions");
+            }
+        }
+        active.incrementAndGet();
+        borrowCount.incrementAndGet();
+        return kieSession;
+    }
+
+    private KieSession create() {
+        while (true) {
+            int current = created.get();
+            if (current >= maxSize) {
+                return null;
+            }
+            if (created.compareAndSet(current, current + 1)) {
+                try {
+                    return newKieSession();
+                } catch (RuntimeException e) {
+                    created.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private KieSession newKieSession() {
+        KieSession kieSession = kieBase.newKieSession();
+        if (listener != null) {
+            kieSession.addEventListener(listener);
+        }
+        return kieSession;
+    }
+
+    /**
+     * Returns a session after a successful evaluation. All facts are deleted so the session comes back empty; if that
+     * fails, or the pool has been closed in the meantime, the session is disposed instead.
+     */
+    void release(KieSession kieSession) {
+        active.decrementAndGet();
+        if (!closed) {
+            try {
+                reset(kieSession);
+                if (idle.offer(kieSession)) {
+                    if (closed && idle.remove(kieSession)) {
+                        discard(kieSession);
+                    }
+                    return;
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        discard(kieSession);
+    }
+
+    /**
+     * Drops a session whose state can no longer be trusted, e.g. after a rule threw during evaluation.
+     */
+    void invalidate(KieSession kieSession) {
+        active.decrementAndGet();
+        discard(kieSession);
+    }
+
+    void reset(KieSession kieSession) {
+        for (FactHandle factHandle : new ArrayList<>(kieSession.getFactHandles())) {
+            kieSession.delete(factHandle);
+        }
+    }
+
+    private void discard(KieSession kieSession) {
+        created.decrementAndGet();
+        try {
+            kieSession.dispose();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Disposes idle sessions and stops pooling; sessions still borrowed are disposed when they are returned.
+     */
+    void close() {
+        closed = true;
+        KieSession kieSession;
+        while ((kieSession = idle.poll()) != null) {
+            discard(kieSession);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getBorrowTimeoutMillis() {
+        return borrowTimeoutMillis;
+    }
+
+    public int getCreated() {
+        return created.get();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SessionPool{" +
+                "maxSize=" + maxSize +
+                ", created=" + getCreated() +
+                ", active=" + getActive() +
+                ", idle=" + getIdle() +
+                ", borrowCount=" + getBorrowCount() +
+                ", waitCount=" + getWaitCount() +
+                ", timeoutCount=" + getTimeoutCount() +
+                '}';
+    }
+}
@@ -0,0 +1,86 @@
+package org.kiegroup.zenithr.drools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Watches the spec file and reloads the rule service whenever its content changes. A spec that fails to compile or
+ * validate is logged and ignored, so the previous one keeps serving until the file is fixed.
+ */
+public class SpecFileWatcher implements AutoCloseable {
+    public static final String SPEC_FILE = "zenithr.spec.file";
+    private final Path file;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private SpecFileWatcher(Path file) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::watch, "zenithr-spec-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public static SpecFileWatcher start(Path file) throws IOException {
+        SpecFileWatcher watcher = new SpecFileWatcher(file);
+        watcher.thread.start();
+        System.out.println("Watching " + watcher.file + " for spec changes");
+        return watcher;
+    }
+
+    public static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private void reload() {
+        try {
+            String spec = read(file);
+            // editors often write a file in several steps, so only a change of content triggers a rebuild
+            if (spec.trim().isEmpty() || spec.equals(SessionFactory.getInstance().getSpec())) {
+                return;
+            }
+            SessionFactory.reload(spec);
+            System.out.println("Reloaded spec from " + file);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Keeping the current spec, " + file + " could not be loaded: " + e);
+        }
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
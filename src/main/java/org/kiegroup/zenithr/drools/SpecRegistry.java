@@ -0,0 +1,197 @@
+package org.kiegroup.zenithr.drools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Named specs read from a directory, one <code>&lt;service&gt;.json</code> file per service. A spec is compiled the
+ * first time its service is requested, and the least recently used ones are dropped once more than the configured
+ * number are loaded. A dropped spec is compiled again, or read from the KieBase cache, the next time it is needed.
+ * <p>
+ * Requests for a loaded spec take no lock and do not touch the file system; only a miss checks for the file. Changed
+ * and deleted files are picked up by {@link #watch()}, which unloads their spec.
+ */
+class SpecRegistry {
+    static final String SPEC_DIR = "zenithr.spec.dir";
+    static final String MAX_LOADED = "zenithr.registry.size";
+    private static final Pattern SERVICE_NAME = Pattern.compile("[A-Za-z0-9_.-]+");
+    // the paths of the endpoints that serve the default spec, which a service of that name could never be reached at
+    private static final Set<String> RESERVED_NAMES = new HashSet<>(Arrays.asList("bulk", "columns", "sessions", "stats", "admin"));
+    private static final String SUFFIX = ".json";
+    private final Path directory;
+    private final int maxLoaded;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Object loadLock = new Object();
+
+    SpecRegistry(Path directory, int maxLoaded) {
+        if (maxLoaded < 1) {
+            throw new IllegalArgumentException("Registry size must be positive: " + maxLoaded);
+        }
+        this.directory = directory;
+        this.maxLoaded = maxLoaded;
+    }
+
+    /**
+     * @return the compiled spec of this service, or null if there is no spec file for it or the name is reserved
+     */
+    SessionFactory get(String service) {
+        Entry entry = entries.get(service);
+        if (entry == null) {
+            entry = load(service);
+            if (entry == null) {
+                return null;
+            }
+        }
+        entry.lastAccess = System.nanoTime();
+        // compiling holds only this entry's lock, so other services keep serving meanwhile
+        return entry.get();
+    }
+
+    private Entry load(String service) {
+        if (!SERVICE_NAME.matcher(service).matches() || service.startsWith(".") || RESERVED_NAMES.contains(service)) {
+            return null;
+        }
+        Path file = directory.resolve(service + SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        synchronized (loadLock) {
+            Entry entry = entries.get(service);
+            if (entry == null) {
+                entry = new Entry(service, file);
+                entries.put(service, entry);
+                if (entries.size() > maxLoaded) {
+                    evictLeastRecentlyUsed(entry);
+                }
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Called with the load lock held. Only misses get here, so scanning the few loaded entries costs nothing on the
+     * request path.
+     */
+    private void evictLeastRecentlyUsed(Entry loaded) {
+        Entry eldest = null;
+        for (Entry entry : entries.values()) {
+            if (entry != loaded && (eldest == null || entry.lastAccess - eldest.lastAccess < 0)) {
+                eldest = entry;
+            }
+        }
+        if (eldest != null && entries.remove(eldest.service, eldest)) {
+            eldest.evict();
+        }
+    }
+
+    /**
+     * Unloads the spec of a file in the directory that changed or was deleted, so the next request compiles the new
+     * content or finds no spec.
+     */
+    void fileChanged(Path fileName) {
+        String name = fileName.toString();
+        if (name.endsWith(SUFFIX)) {
+            Entry entry = entries.remove(name.substring(0, name.length() - SUFFIX.length()));
+            if (entry != null) {
+                entry.evict();
+            }
+        }
+    }
+
+    /**
+     * Starts a daemon thread that unloads specs whose file changes or is deleted.
+     */
+    void watch() throws IOException {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // events were lost, so no loaded spec can be trusted to match its file
+                            for (String service : entries.keySet()) {
+                                fileChanged(directory.getFileSystem().getPath(service + SUFFIX));
+                            }
+                        } else {
+                            fileChanged((Path) event.context());
+                        }
+                    }
+                    key.reset();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // closed
+            }
+        }, "zenithr-registry-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Watching " + directory.toAbsolutePath() + " for spec changes");
+    }
+
+    int getLoaded() {
+        return entries.size();
+    }
+
+    int getMaxLoaded() {
+        return maxLoaded;
+    }
+
+    private static class Entry {
+        private final String service;
+        private final Path file;
+        private volatile SessionFactory sessionFactory;
+        private volatile long lastAccess = System.nanoTime();
+
+        Entry(String service, Path file) {
+            this.service = service;
+            this.file = file;
+        }
+
+        SessionFactory get() {
+            SessionFactory loaded = sessionFactory;
+            return loaded != null ? loaded : compile();
+        }
+
+        private synchronized SessionFactory compile() {
+            if (sessionFactory == null) {
+                String spec;
+                try {
+                    spec = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    throw new RuntimeException("Cannot read spec of " + service, e);
+                }
+                sessionFactory = SessionFactory.compile(spec);
+            }
+            return sessionFactory;
+        }
+
+        /**
+         * Must not wait for a compilation in progress; a spec evicted while it compiles is simply not retained.
+         */
+        void evict() {
+            SessionFactory evicted = sessionFactory;
+            if (evicted != null) {
+                System.out.println("Unloading rule service " + service);
+                evicted.getSessionPool().close();
+                if (evicted.getResultCache() != null) {
+                    evicted.getResultCache().clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package org.kiegroup.zenithr.drools;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+/**
+ * How values of one spec type are parsed from request parameters and carried in a {@link FactField}. Each input and
+ * the output resolve their type once when the spec is loaded, so requests do no dispatch on type names. Parsing uses
+ * the immutable java.time formatters and is safe from any thread.
+ */
+enum ValueType {
+    BOOLEAN("boolean") {
+        @Override
+        Object parseValue(String text) {
+            if ("true".equalsIgnoreCase(text)) {
+                return Boolean.TRUE;
+            } else if ("false".equalsIgnoreCase(text)) {
+                return Boolean.FALSE;
+            }
+            throw new IllegalArgumentException(text);
+        }
+
+        @Override
+        void set(FactField factField, Object value) {
+            factField.setBooleanValue((Boolean) value);
+        }
+
+        @Override
+        Object get(FactField factField) {
+            return factField.getBooleanValue();
+        }
+
+        @Override
+        Object read(DataInput in) throws IOException {
+            return in.readBoolean();
+        }
+
+        @Override
+        void write(DataOutput out, Object value) throws IOException {
+            out.writeBoolean((Boolean) value);
+        }
+    },
+    INT("int") {
+        @Override
+        Object parseValue(String text) {
+            return Integer.parseInt(text);
+        }
+
+        @Override
+        void set(FactField factField, Object value) {
+            factField.setIntValue((Integer) value);
+        }
+
+        @Override
+        Object get(FactField factField) {
+            return factField.getIntValue();
+        }
+
+        @Override
+        Object read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+
+        @Override
+        void write(DataOutput out, Object value) throws IOException {
+            out.writeInt(((Number) value).intValue());
+        }
+    },
+    DOUBLE("double") {
+        @Override
+        Object parseValue(String text) {
+            return Double.parseDouble(text);
+        }
+
+        @Override
+        void set(FactField factField, Object value) {
+            factField.setDoubleValue((Double) value);
+        }
+
+        @Override
+        Object get(FactField factField) {
+            return factField.getDoubleValue();
+        }
+
+        @Override
+        Object read(DataInput in) throws IOException {
+            return in.readDouble();
+        }
+
+        @Override
+        void write(DataOutput out, Object value) throws IOException {
+            out.writeDouble(((Number) value).doubleValue());
+        }
+    },
+    LONG("long") {
+        @Override
+        Object parseValue(String text) {
+            return Long.parseLong(text);
+        }
+
+        @Override
+        void set(FactField factField, Object value) {
+            factField.setLongValue((Long) value);
+        }
+
+        @Override
+        Object get(FactField factField) {
+            return factField.getLongValue();
+        }
+
+        @Override
+        Object read(DataInput in) throws IOException {
+            return in.readLong();
+        }
+
+        @Override
+        void write(DataOutput out, Object value) throws IOException {
+            out.writeLong(((Number) value).longValue());
+        }
+    },
+    /**
+     * An ISO date such as 2019-04-30, at midnight in the default time zone like the date literals of the rules.
+     */
+    DATE("date") {
+        @Override
+        Object parseValue(String text) {
+            return Date.from(LocalDate.parse(text).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        }
+
+        @Override
+        void set(FactField factField, Object value) {
+            factField.setDateValue((Date) value);
+        }
+
+        @Override
+        Object get(FactField factField) {
+            return factField.getDateValue();
+        }
+
+        @Override
+        Object read(DataInput in) throws IOException {
+            return Date.from(LocalDate.ofEpochDay(in.readInt()).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        }
+
+        @Override
+        void write(DataOutput out, Object value) throws IOException {
+            out.writeInt((int) ((Date) value).toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay());
+        }
+    },
+    /**
+     * An ISO local date and time such as 2019-04-30T13:45, taken as UTC.
+     */
+    DATETIME("datetime") {
+        @Override
+        Object parseValue(String text) {
+            return Date.from(LocalDateTime.parse(text).toInstant(ZoneOffset.UTC));
+        }
+
+        @Override
+        void set(FactField factField, Object value) {
+            factField.setDateValue((Date) value);
+        }
+
+        @Override
+        Object get(FactField factField) {
+            return factField.getDateValue();
+        }
+
+        @Override
+        Object read(DataInput in) throws IOException {
+            return new Date(in.readLong());
+        }
+
+        @Override
+        void write(DataOutput out, Object value) throws IOException {
+            out.writeLong(((Date) value).getTime());
+        }
+    },
+    STRING("string") {
+        @Override
+        Object parse(String text) {
+            return text;
+        }
+
+        @Override
+        Object parseValue(String text) {
+            return text;
+        }
+
+        @Override
+        void set(FactField factField, Object value) {
+            factField.setStringValue((String) value);
+        }
+
+        @Override
+        Object get(FactField factField) {
+            return factField.getStringValue();
+        }
+
+        @Override
+        Object read(DataInput in) throws IOException {
+            int length = in.readInt();
+            // a corrupt length must not allocate an arbitrarily large buffer
+            if (length < 0 || length > MAX_STRING_BYTES) {
+                throw new IllegalArgumentException("Invalid string length: " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        void write(DataOutput out, Object value) throws IOException {
+            byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    };
+
+    private static final int MAX_STRING_BYTES = 1 << 20;
+    private final String name;
+
+    ValueType(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @throws IllegalArgumentException for a type name the spec format does not define
+     */
+    static ValueType of(String name) {
+        for (ValueType type : values()) {
+            if (type.name.equals(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown type: " + name);
+    }
+
+    /**
+     * @return the value, or null for an empty parameter, which counts as a missing input for every type but string
+     * @throws RuntimeException if the text does not parse as this type
+     */
+    Object parse(String text) {
+        String trimmed = text.trim();
+        return trimmed.isEmpty() ? null : parseValue(trimmed);
+    }
+
+    abstract Object parseValue(String text);
+
+    abstract void set(FactField factField, Object value);
+
+    abstract Object get(FactField factField);
+
+    /**
+     * Reads a value in the fixed-width encoding of {@link BinaryRows}.
+     */
+    abstract Object read(DataInput in) throws IOException;
+
+    abstract void write(DataOutput out, Object value) throws IOException;
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,216 @@
+package org.kiegroup.zenithr.drools;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs synthetic requests through the real evaluation path before a spec serves traffic, so class generation, lazy
+ * Rete node creation and JIT compilation happen up front instead of on the first real requests. Inputs combine
+ * ordinary values of each type with the constants found in the <code>when</code> clauses and their neighbors, which
+ * makes every rule both match and miss. Warm-up evaluations skip the result cache, which would otherwise answer most of
+ * them and hold synthetic results, and are left out of the metrics.
+ * <p>
+ * Warm-up stops after <code>zenithr.warmup.millis</code> or <code>zenithr.warmup.iterations</code>, whichever comes
+ * first; either set to 0 skips it.
+ */
+public class Warmup implements Runnable {
+    public static final String WARMUP_MILLIS = "zenithr.warmup.millis";
+    public static final String WARMUP_ITERATIONS = "zenithr.warmup.iterations";
+    private static final Pattern STRING_LITERAL = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?");
+    private static volatile Warmup CURRENT;
+    private final SessionFactory sessionFactory;
+    private final long maxMillis;
+    private final long maxIterations;
+    private volatile long iterations;
+    private volatile boolean done;
+
+    Warmup(SessionFactory sessionFactory, long maxMillis, long maxIterations) {
+        this.sessionFactory = sessionFactory;
+        this.maxMillis = maxMillis;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Warms up the spec on a background thread; until it is done, {@link #isReady()} is false.
+     */
+    public static Warmup start(SessionFactory sessionFactory) {
+        Warmup warmup = new Warmup(sessionFactory, Long.getLong(WARMUP_MILLIS, 10_000L), Long.getLong(WARMUP_ITERATIONS, 20_000L));
+        CURRENT = warmup;
+        Thread thread = new Thread(warmup, "zenithr-warmup");
+        thread.setDaemon(true);
+        thread.start();
+        return warmup;
+    }
+
+    /**
+     * @return whether the last warm-up started has finished, or true if none was started
+     */
+    public static boolean isReady() {
+        Warmup warmup = CURRENT;
+        return warmup == null || warmup.done;
+    }
+
+    public static Warmup getCurrent() {
+        return CURRENT;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        long deadline = start + maxMillis * 1_000_000;
+        try {
+            RuleMetrics.unrecorded(() -> evaluate(deadline));
+            System.out.println(String.format("Warmed up %s with %d evaluations in %d ms", sessionFactory.getServiceName(), iterations,
+                    (System.nanoTime() - start) / 1_000_000));
+        } catch (RuntimeException e) {
+            System.out.println("Warm-up of " + sessionFactory.getServiceName() + " failed: " + e);
+        } finally {
+            done = true;
+        }
+    }
+
+    private void evaluate(long deadline) {
+        Map<String, List<String>> candidates = getCandidates(sessionFactory);
+        Random random = new Random(42);
+        while (iterations < maxIterations && System.nanoTime() < deadline) {
+            Map<String, String[]> parameters = new HashMap<>();
+            for (Map.Entry<String, List<String>> entry : candidates.entrySet()) {
+                List<String> values = entry.getValue();
+                // leave an input out now and then, as real requests do
+                int index = random.nextInt(values.size() + 1);
+                if (index < values.size()) {
+                    parameters.put(entry.getKey(), new String[]{values.get(index)});
+                }
+            }
+            try {
+                RuleService.evaluate(sessionFactory, sessionFactory.getValues(parameters));
+            } catch (RuntimeException e) {
+                // inputs that do not parse still warm up the parsing path
+            }
+            iterations++;
+        }
+    }
+
+    /**
+     * @return the values to draw from for each input: ordinary values of its type, and the constants of the rules with
+     * their neighbors on either side
+     */
+    static Map<String, List<String>> getCandidates(SessionFactory sessionFactory) {
+        Set<String> strings = new LinkedHashSet<>();
+        Set<BigDecimal> numbers = new LinkedHashSet<>();
+        JsonObject spec = Json.createReader(new StringReader(sessionFactory.getSpec())).readObject();
+        for (JsonObject rule : spec.getJsonArray("rules").getValuesAs(JsonObject.class)) {
+            String when = rule.getString("when");
+            Matcher matcher = STRING_LITERAL.matcher(when);
+            while (matcher.find()) {
+                strings.add(matcher.group(1));
+            }
+            matcher = NUMBER_LITERAL.matcher(STRING_LITERAL.matcher(when).replaceAll("\"\""));
+            while (matcher.find()) {
+                BigDecimal number = new BigDecimal(matcher.group());
+                numbers.add(number);
+                // the minus may be a subtraction as well as a sign
+                numbers.add(number.abs());
+            }
+        }
+        Map<String, List<String>> declaredValues = new HashMap<>();
+        for (JsonObject input : spec.getJsonArray("input").getValuesAs(JsonObject.class)) {
+            if (input.containsKey("values")) {
+                List<String> values = new ArrayList<>();
+                for (JsonValue value : input.getJsonArray("values")) {
+                    values.add(value.getValueType() == JsonValue.ValueType.STRING ? ((JsonString) value).getString() : value.toString());
+                }
+                declaredValues.put(input.getString("name"), values);
+            }
+        }
+
+        Map<String, List<String>> candidates = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : sessionFactory.getInputTypeMap().entrySet()) {
+            Set<String> values = new LinkedHashSet<>();
+            List<String> declared = declaredValues.get(entry.getKey());
+            if (declared != null) {
+                values.addAll(declared);
+            }
+            switch (entry.getValue()) {
+                case "boolean":
+                    values.add("true");
+                    values.add("false");
+                    break;
+                case "int":
+                case "long":
+                    values.add("0");
+                    values.add("-1");
+                    for (BigDecimal number : numbers) {
+                        if (number.stripTrailingZeros().scale() <= 0) {
+                            long value = number.longValue();
+                            values.add(String.valueOf(value - 1));
+                            values.add(String.valueOf(value));
+                            values.add(String.valueOf(value + 1));
+                        }
+                    }
+                    break;
+                case "double":
+                    values.add("0");
+                    values.add("-1.5");
+                    for (BigDecimal number : numbers) {
+                        values.add(number.subtract(BigDecimal.ONE).toPlainString());
+                        values.add(number.subtract(new BigDecimal("0.01")).toPlainString());
+                        values.add(number.toPlainString());
+                        values.add(number.add(new BigDecimal("0.01")).toPlainString());
+                        values.add(number.add(BigDecimal.ONE).toPlainString());
+                    }
+                    break;
+                case "date":
+                    values.add(LocalDate.now().toString());
+                    for (String string : strings) {
+                        try {
+                            LocalDate date = LocalDate.parse(string);
+                            values.add(date.minusDays(1).toString());
+                            values.add(date.toString());
+                            values.add(date.plusDays(1).toString());
+                        } catch (DateTimeParseException e) {
+                            // not a date literal
+                        }
+                    }
+                    break;
+                case "datetime":
+                    values.add("1970-01-01T00:00");
+                    values.add(LocalDate.now().atStartOfDay().toString());
+                    break;
+                case "string":
+                    values.add("");
+                    values.addAll(strings);
+                    break;
+                default:
+                    break;
+            }
+            candidates.put(entry.getKey(), new ArrayList<>(values));
+        }
+        return candidates;
+    }
+
+    public long getIterations() {
+        return iterations;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+}
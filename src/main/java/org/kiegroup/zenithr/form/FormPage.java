@@ -0,0 +1,224 @@
+package org.kiegroup.zenithr.form;
+
+import org.kiegroup.zenithr.drools.SessionFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The form of one spec, rendered once from the templates. Everything but the input values and the result is kept as
+ * encoded bytes, so a request only escapes and writes what it filled in; the empty form is complete up front, along
+ * with its gzipped bytes and an ETag for each encoding.
+ */
+class FormPage {
+    private static final String MARKER = "\u0000";
+    private static final byte[] CHECKED = getBytes("checked");
+    private final String[] names;
+    private final boolean[] checkboxes;
+    private final byte[] head;
+    private final byte[][] beforeValue;
+    private final byte[][] afterValue;
+    private final byte[] beforeResult;
+    private final byte[] resultStart;
+    private final byte[] resultEnd;
+    private final byte[] tail;
+    private final byte[] empty;
+    private final byte[] emptyGzip;
+    private final String eTag;
+    private final String gzipETag;
+
+    FormPage(SessionFactory sessionFactory, String formTemplate, String inputTemplate, String resultTemplate) {
+        String serviceName = escape(sessionFactory.getServiceName());
+        String[] form = String.format(formTemplate, serviceName, serviceName, MARKER, MARKER).split(MARKER, -1);
+        this.head = getBytes(form[0]);
+        this.beforeResult = getBytes(form[1]);
+        this.tail = getBytes(form[2]);
+        String[] result = String.format(resultTemplate, MARKER).split(MARKER, -1);
+        this.resultStart = getBytes(result[0]);
+        this.resultEnd = getBytes(result[1]);
+
+        Map<String, String> inputTypes = sessionFactory.getInputTypeMap();
+        this.names = inputTypes.keySet().toArray(new String[0]);
+        this.checkboxes = new boolean[names.length];
+        this.beforeValue = new byte[names.length][];
+        this.afterValue = new byte[names.length][];
+        for (int index = 0; index < names.length; index++) {
+            String name = escape(names[index]);
+            String capitalized = escape(names[index].substring(0, 1).toUpperCase() + names[index].substring(1));
+            String type = inputTypes.get(names[index]);
+            String htmlType = getHtmlType(type);
+            String[] input;
+            if (htmlType.equals("checkbox")) {
+                // a checked box submits its value attribute, so it is always true and the state goes in "checked"
+                checkboxes[index] = true;
+                input = String.format(inputTemplate, name, capitalized, htmlType, MARKER, name, name, "true").split(MARKER, -1);
+            } else {
+                input = String.format(inputTemplate, name, capitalized, htmlType, getOtherAttribute(type), name, name, MARKER).split(MARKER, -1);
+            }
+            beforeValue[index] = getBytes(input[0]);
+            afterValue[index] = getBytes(input[1]);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(bytes, null, null);
+            this.empty = bytes.toByteArray();
+            bytes.reset();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(empty);
+            }
+            this.emptyGzip = bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(empty);
+        String hash = Long.toHexString(checksum.getValue()) + '-' + Integer.toHexString(empty.length);
+        // the gzipped body has other bytes, so a strong tag must differ from the identity one
+        this.eTag = '"' + hash + '"';
+        this.gzipETag = '"' + hash + "-gz" + '"';
+    }
+
+    /**
+     * Writes the form filled in with the given parameters, followed by a result section unless the result is null.
+     */
+    void write(OutputStream out, Map<String, String[]> parameterMap, Object result) throws IOException {
+        out.write(head);
+        for (int index = 0; index < names.length; index++) {
+            out.write(beforeValue[index]);
+            String[] values = parameterMap == null ? null : parameterMap.get(names[index]);
+            if (values != null && values.length > 0) {
+                if (!checkboxes[index]) {
+                    out.write(getBytes(escape(values[0])));
+                } else if (values[0].trim().equalsIgnoreCase("true")) {
+                    out.write(CHECKED);
+                }
+            }
+            out.write(afterValue[index]);
+        }
+        out.write(beforeResult);
+        if (result != null) {
+            out.write(resultStart);
+            out.write(getBytes(escape(String.valueOf(result))));
+            out.write(resultEnd);
+        }
+        out.write(tail);
+    }
+
+    /**
+     * @return the submitted parameters with every unchecked box, which the browser leaves out, as false
+     */
+    Map<String, String[]> getParameters(Map<String, String[]> parameterMap) {
+        Map<String, String[]> parameters = new HashMap<>(parameterMap);
+        for (int index = 0; index < names.length; index++) {
+            if (checkboxes[index]) {
+                parameters.putIfAbsent(names[index], new String[]{"false"});
+            }
+        }
+        return parameters;
+    }
+
+    byte[] getEmpty() {
+        return empty;
+    }
+
+    byte[] getEmptyGzip() {
+        return emptyGzip;
+    }
+
+    String getETag(boolean gzip) {
+        return gzip ? gzipETag : eTag;
+    }
+
+    /**
+     * @return whether an If-None-Match header names the current form in this encoding, so the client copy is still
+     * valid
+     */
+    boolean matches(String ifNoneMatch, boolean gzip) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(getETag(gzip))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String escape(String text) {
+        StringBuilder escaped = null;
+        for (int index = 0; index < text.length(); index++) {
+            char c = text.charAt(index);
+            String replacement;
+            switch (c) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                case '\'':
+                    replacement = "&#39;";
+                    break;
+                default:
+                    if (escaped != null) {
+                        escaped.append(c);
+                    }
+                    continue;
+            }
+            if (escaped == null) {
+                escaped = new StringBuilder(text.length() + 16).append(text, 0, index);
+            }
+            escaped.append(replacement);
+        }
+        return escaped == null ? text : escaped.toString();
+    }
+
+    private static byte[] getBytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String getHtmlType(String type) {
+        switch (type) {
+            case "boolean":
+                return "checkbox";
+            case "int":
+            case "double":
+            case "long":
+                return "number";
+            case "date":
+                return "date";
+            case "datetime":
+                return "datetime-local";
+            case "string":
+            default:
+                return "text";
+        }
+    }
+
+    private static String getOtherAttribute(String type) {
+        switch (type) {
+            case "double":
+                return "step=" + '"' + "any" + '"';
+            default:
+                return "";
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.kiegroup.zenithr.form;
 
+import org.kiegroup.zenithr.drools.EvaluationResult;
+import org.kiegroup.zenithr.drools.InvalidInputException;
+import org.kiegroup.zenithr.drools.RuleMetrics;
 import org.kiegroup.zenithr.drools.RuleService;
 import org.kiegroup.zenithr.drools.SessionFactory;
 
@@ -8,86 +11,145 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 
-@WebServlet("/*")
+/**
+ * Serves the HTML form of a spec, and the result of submitting it. The templates are read once and each spec renders
+ * its form once; the empty form is answered from memory, gzipped when the client accepts it and with a 304 when the
+ * client already has it.
+ */
+@WebServlet(value = "/*", asyncSupported = true)
 public class FormServlet extends HttpServlet {
+    private static final String FORM_TEMPLATE = getFileContent("/form.html");
+    private static final String INPUT_TEMPLATE = getFileContent("/input.html");
+    private static final String RESULT_TEMPLATE = getFileContent("/result.html");
+    private static final String CONTENT_TYPE = "text/html;charset=UTF-8";
+    // keyed by instance, so a reloaded or evicted spec drops its page along with it
+    private static final Map<SessionFactory, FormPage> PAGES = Collections.synchronizedMap(new WeakHashMap<>());
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         if (request.getParameterMap().size() > 0) {
-            request.getRequestDispatcher("/rest").forward(request, response);
+            request.getRequestDispatcher(getRestPath(request)).forward(request, response);
         } else {
-            response.getWriter().print(getHTML(request.getParameterMap(), ""));
-            response.getWriter().close();
+            SessionFactory sessionFactory = getSessionFactory(request);
+            if (sessionFactory == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            FormPage page = getPage(sessionFactory);
+            boolean gzip = acceptsGzip(request.getHeader("Accept-Encoding"));
+            response.setHeader("ETag", page.getETag(gzip));
+            response.setHeader("Vary", "Accept-Encoding");
+            if (page.matches(request.getHeader("If-None-Match"), gzip)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            response.setContentType(CONTENT_TYPE);
+            byte[] body = page.getEmpty();
+            if (gzip) {
+                response.setHeader("Content-Encoding", "gzip");
+                body = page.getEmptyGzip();
+            }
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
         }
     }
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         if (request.getParameterMap().size() > 0) {
-            Object output = RuleService.getOutput(request.getParameterMap());
-            String result = String.format(getFileContent("/result.html"), output);
-            response.getWriter().print(getHTML(request.getParameterMap(), result));
-            response.getWriter().close();
+            SessionFactory sessionFactory = getSessionFactory(request);
+            if (sessionFactory == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            FormPage page = getPage(sessionFactory);
+            Map<String, String[]> parameters = page.getParameters(request.getParameterMap());
+            Object output;
+            try {
+                output = RuleService.getOutput(sessionFactory, parameters);
+            } catch (InvalidInputException e) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                output = e.getMessage();
+            } catch (RuntimeException e) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                output = EvaluationResult.failure(e).getError();
+            }
+            long start = RuleMetrics.start();
+            response.setContentType(CONTENT_TYPE);
+            page.write(response.getOutputStream(), parameters, output == null ? "" : output);
+            RuleMetrics.record(RuleMetrics.Phase.SERIALIZE, start);
         } else {
-            request.getRequestDispatcher("/rest").forward(request, response);
+            request.getRequestDispatcher(getRestPath(request)).forward(request, response);
         }
     }
 
-    private String getHTML(Map<String, String[]> parameterMap, String result) {
-        String template = getFileContent("/form.html");
-        String serviceName = SessionFactory.getInstance().getServiceName();
-        StringWriter inputSection = getInputSection(parameterMap);
-        return String.format(template, serviceName, serviceName, inputSection, result);
+    FormPage getPage(SessionFactory sessionFactory) {
+        return PAGES.computeIfAbsent(sessionFactory, key -> new FormPage(key, FORM_TEMPLATE, INPUT_TEMPLATE, RESULT_TEMPLATE));
     }
 
-    private StringWriter getInputSection(Map<String, String[]> parameterMap) {
-        String inputTemplate = getFileContent("/input.html");
-        Map<String, String> inputTypes = SessionFactory.getInstance().getInputTypeMap();
-        StringWriter inputSection = new StringWriter();
-        for (String name : inputTypes.keySet()) {
-            String value = "";
-            if( parameterMap.get(name) != null ) {
-                value = parameterMap.get(name)[0];
+    /**
+     * @return whether an Accept-Encoding header allows gzip, by name or through <code>*</code>, with a q-value above 0
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double gzip = -1;
+        double any = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int index = 1; index < parameters.length; index++) {
+                String parameter = parameters[index].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = Math.max(gzip, quality);
+            } else if (name.equals("*")) {
+                any = quality;
             }
-            String capitalized = name.substring(0, 1).toUpperCase() + name.substring(1);
-            inputSection.append(String.format(inputTemplate, name, capitalized, getHtmlType(inputTypes.get(name)), getOtherAttribute(inputTypes.get(name)), name, name, value));
         }
-        return inputSection;
+        return (gzip >= 0 ? gzip : any) > 0;
     }
 
-    private String getHtmlType(String type) {
-        switch (type) {
-            case "boolean":
-                return "checkbox";
-            case "int":
-            case "double":
-            case "long":
-                return "number";
-            case "date":
-                return "date";
-            case "datetime":
-                return "datetime-local";
-            case "string":
-            default:
-                return "text";
-        }
+    /**
+     * @return the spec served at this path: the default spec at the root, or the named service at <code>/{service}</code>
+     */
+    private SessionFactory getSessionFactory(HttpServletRequest request) {
+        String service = getService(request);
+        return service.isEmpty() ? SessionFactory.getInstance() : SessionFactory.getInstance(service);
     }
 
-    private String getOtherAttribute(String type) {
-        switch (type) {
-            case "double":
-                return "step=" + '"' + "any" + '"';
-            default:
-                return "";
-        }
+    private String getService(HttpServletRequest request) {
+        String pathInfo = request.getPathInfo();
+        return pathInfo == null ? "" : pathInfo.replaceAll("^/+|/+$", "");
+    }
+
+    private String getRestPath(HttpServletRequest request) {
+        String service = getService(request);
+        return service.isEmpty() ? "/rest" : "/rest/" + service;
     }
 
-    private String getFileContent(String fileName) {
-        InputStream inputStream = getClass().getResourceAsStream(fileName);
-        return new BufferedReader(new InputStreamReader(inputStream)).lines().collect(Collectors.joining("\n"));
+    private static String getFileContent(String fileName) {
+        InputStream inputStream = FormServlet.class.getResourceAsStream(fileName);
+        return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)).lines().collect(Collectors.joining("\n"));
     }
 }
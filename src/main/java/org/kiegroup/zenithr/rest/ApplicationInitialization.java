@@ -1,22 +1,58 @@
 package org.kiegroup.zenithr.rest;
 
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.kiegroup.zenithr.drools.RuleMetrics;
 import org.kiegroup.zenithr.drools.SessionFactory;
+import org.kiegroup.zenithr.drools.SpecFileWatcher;
+import org.kiegroup.zenithr.drools.Warmup;
 
+import javax.inject.Inject;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 @WebListener
 public class ApplicationInitialization implements ServletContextListener {
+    private SpecFileWatcher specFileWatcher;
+
+    @Inject
+    private MetricRegistry metricRegistry;
 
     @Override
     public void contextInitialized(ServletContextEvent sce) {
-        System.setProperty("GET", System.getenv("GET"));
-        SessionFactory.getInstance();
+        if (metricRegistry != null) {
+            // before any spec is compiled, so every session gets the rule firing listener
+            RuleMetrics.setRegistry(metricRegistry);
+        }
+        String specFile = System.getProperty(SpecFileWatcher.SPEC_FILE);
+        if (specFile == null) {
+            String spec = System.getenv("GET");
+            if (spec != null) {
+                System.setProperty("GET", spec);
+                Warmup.start(SessionFactory.getInstance());
+            } else if (System.getProperty("zenithr.spec.dir") == null) {
+                throw new IllegalStateException("No spec configured: set GET, zenithr.spec.file or zenithr.spec.dir");
+            }
+            return;
+        }
+        Path path = Paths.get(specFile);
+        try {
+            System.setProperty("GET", SpecFileWatcher.read(path));
+            Warmup.start(SessionFactory.getInstance());
+            specFileWatcher = SpecFileWatcher.start(path);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read spec file " + path, e);
+        }
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
-        //Nothing to do
+        EvaluationExecutor.shutdown();
+        if (specFileWatcher != null) {
+            specFileWatcher.close();
+        }
     }
 }
@@ -0,0 +1,166 @@
+package org.kiegroup.zenithr.rest;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs evaluations off the container's request threads. At most <code>concurrency</code> evaluations run at once and
+ * at most <code>queueDepth</code> more wait; anything beyond that is answered right away with 503 and a Retry-After
+ * header, so a spike is shed instead of piling up behind slow evaluations.
+ * <p>
+ * On a JDK with virtual threads, each evaluation gets its own virtual thread and waits for a running permit there;
+ * otherwise a fixed pool of <code>concurrency</code> platform threads takes the queued evaluations in order.
+ */
+class EvaluationExecutor {
+    static final String CONCURRENCY = "zenithr.async.concurrency";
+    static final String QUEUE_DEPTH = "zenithr.async.queue";
+    static final String RETRY_AFTER = "zenithr.async.retryAfter";
+    static final String VIRTUAL_THREADS = "zenithr.async.virtual";
+    private static EvaluationExecutor INSTANCE;
+    private final int concurrency;
+    private final int queueDepth;
+    private final int retryAfterSeconds;
+    private final Semaphore admission;
+    private final Semaphore running;
+    private final ExecutorService executor;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    EvaluationExecutor(int concurrency, int queueDepth, int retryAfterSeconds, boolean virtualThreads) {
+        if (concurrency < 1 || queueDepth < 0) {
+            throw new IllegalArgumentException("Invalid evaluation limits: concurrency " + concurrency + ", queue " + queueDepth);
+        }
+        this.concurrency = concurrency;
+        this.queueDepth = queueDepth;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.admission = new Semaphore(concurrency + queueDepth);
+        ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.running = new Semaphore(concurrency);
+        } else {
+            this.executor = Executors.newFixedThreadPool(concurrency, new EvaluationThreadFactory());
+            this.running = null;
+        }
+    }
+
+    static synchronized EvaluationExecutor getInstance() {
+        if (INSTANCE == null) {
+            int concurrency = Integer.getInteger(CONCURRENCY, Runtime.getRuntime().availableProcessors() * 2);
+            int queueDepth = Integer.getInteger(QUEUE_DEPTH, concurrency * 4);
+            int retryAfter = Integer.getInteger(RETRY_AFTER, 1);
+            boolean virtualThreads = Boolean.parseBoolean(System.getProperty(VIRTUAL_THREADS, "true"));
+            INSTANCE = new EvaluationExecutor(concurrency, queueDepth, retryAfter, virtualThreads);
+        }
+        return INSTANCE;
+    }
+
+    static synchronized void shutdown() {
+        if (INSTANCE != null) {
+            INSTANCE.executor.shutdown();
+            INSTANCE = null;
+        }
+    }
+
+    /**
+     * Virtual threads arrived after the Java 8 baseline, so they are looked up reflectively.
+     *
+     * @return an executor starting a virtual thread per task, or null if the JDK has none
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            System.out.println("Evaluating requests on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resumes the response with the result of the evaluation, with the exception it threw, or with 503 if there is no
+     * room left to queue it.
+     */
+    void submit(AsyncResponse asyncResponse, Callable<Response> evaluation) {
+        if (!admission.tryAcquire()) {
+            reject(asyncResponse);
+            return;
+        }
+        try {
+            executor.execute(() -> run(asyncResponse, evaluation));
+        } catch (RejectedExecutionException e) {
+            admission.release();
+            reject(asyncResponse);
+        }
+    }
+
+    private void run(AsyncResponse asyncResponse, Callable<Response> evaluation) {
+        try {
+            if (running != null) {
+                running.acquire();
+            }
+            try {
+                asyncResponse.resume(evaluation.call());
+            } finally {
+                if (running != null) {
+                    running.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            asyncResponse.resume(e);
+        } catch (Exception e) {
+            asyncResponse.resume(e);
+        } finally {
+            admission.release();
+        }
+    }
+
+    private void reject(AsyncResponse asyncResponse) {
+        rejectedCount.incrementAndGet();
+        asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", retryAfterSeconds)
+                .build());
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    int getQueueDepth() {
+        return queueDepth;
+    }
+
+    boolean isVirtual() {
+        return running != null;
+    }
+
+    /**
+     * @return evaluations running or waiting to run
+     */
+    int getInFlight() {
+        return concurrency + queueDepth - admission.availablePermits();
+    }
+
+    long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private static class EvaluationThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "zenithr-evaluation-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
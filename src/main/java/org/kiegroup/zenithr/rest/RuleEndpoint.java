@@ -1,28 +1,511 @@
 package org.kiegroup.zenithr.rest;
 
 
+import org.kiegroup.zenithr.drools.BinaryRows;
+import org.kiegroup.zenithr.drools.BulkScorer;
+import org.kiegroup.zenithr.drools.EvaluationResult;
+import org.kiegroup.zenithr.drools.EvaluationSession;
+import org.kiegroup.zenithr.drools.EvaluationSessions;
+import org.kiegroup.zenithr.drools.InvalidInputException;
+import org.kiegroup.zenithr.drools.JsonRows;
+import org.kiegroup.zenithr.drools.ResultCache;
+import org.kiegroup.zenithr.drools.RuleMetrics;
 import org.kiegroup.zenithr.drools.RuleService;
+import org.kiegroup.zenithr.drools.SessionFactory;
+import org.kiegroup.zenithr.drools.SessionPool;
 
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
-import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 @Path("/")
 public class RuleEndpoint {
+    static final String ADMIN_ENABLED = "zenithr.admin.enabled";
 
+    /**
+     * Evaluates on the evaluation executor rather than the request thread, answering 503 when it is saturated.
+     */
     @GET
     @Produces("application/json")
-    public Response doGet(@Context HttpServletRequest request) {
+    public void doGet(@Context HttpServletRequest request, @Suspended AsyncResponse asyncResponse) {
+        evaluate(SessionFactory.getInstance(), request, asyncResponse);
+    }
+
+    /**
+     * Evaluates the spec of a named service from the spec directory, compiling it on first use.
+     */
+    @GET
+    @Path("{service}")
+    @Produces("application/json")
+    public void doGet(@PathParam("service") String service, @Context HttpServletRequest request, @Suspended AsyncResponse asyncResponse) {
+        SessionFactory sessionFactory = SessionFactory.getInstance(service);
+        if (sessionFactory == null) {
+            asyncResponse.resume(Response.status(Response.Status.NOT_FOUND).build());
+            return;
+        }
+        evaluate(sessionFactory, request, asyncResponse);
+    }
+
+    private void evaluate(SessionFactory sessionFactory, HttpServletRequest request, AsyncResponse asyncResponse) {
+        // the request may be recycled once it is suspended, so its parameters are copied on the request thread
+        Map<String, String[]> parameters = new HashMap<>(request.getParameterMap());
+        EvaluationExecutor.getInstance().submit(asyncResponse, () -> {
+            try {
+                return Response.ok(RuleService.getOutput(sessionFactory, parameters)).build();
+            } catch (InvalidInputException e) {
+                return invalidInput(e);
+            } catch (RuntimeException e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(JsonRows.error(EvaluationResult.failure(e).getError()).build().toString()).build();
+            }
+        });
+    }
+
+    private static Response invalidInput(InvalidInputException e) {
+        return Response.status(Response.Status.BAD_REQUEST).entity(JsonRows.error(e).build().toString()).build();
+    }
+
+    /**
+     * Evaluates a JSON array of input objects and returns an array of the same length, where each element is either
+     * <code>{"output": ...}</code> or <code>{"error": "..."}</code> for the row at that position.
+     */
+    @POST
+    @Consumes("application/json")
+    @Produces("application/json")
+    public Response doPost(String body) {
+        return evaluate(SessionFactory.getInstance(), body);
+    }
+
+    @POST
+    @Path("{service}")
+    @Consumes("application/json")
+    @Produces("application/json")
+    public Response doPost(@PathParam("service") String service, String body) {
+        SessionFactory sessionFactory = SessionFactory.getInstance(service);
+        if (sessionFactory == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return evaluate(sessionFactory, body);
+    }
+
+    /**
+     * Evaluates rows in the positional binary format of {@link BinaryRows}. Callers must send the schema fingerprint
+     * of the spec they were built against; a different one is answered with 409 Conflict.
+     */
+    @POST
+    @Consumes(BinaryRows.CONTENT_TYPE)
+    @Produces(BinaryRows.CONTENT_TYPE)
+    public Response doPostBinary(@HeaderParam(BinaryRows.SCHEMA_HEADER) String fingerprint, InputStream body) {
+        return evaluateBinary(SessionFactory.getInstance(), fingerprint, body);
+    }
+
+    @POST
+    @Path("{service}")
+    @Consumes(BinaryRows.CONTENT_TYPE)
+    @Produces(BinaryRows.CONTENT_TYPE)
+    public Response doPostBinary(@PathParam("service") String service, @HeaderParam(BinaryRows.SCHEMA_HEADER) String fingerprint, InputStream body) {
+        SessionFactory sessionFactory = SessionFactory.getInstance(service);
+        if (sessionFactory == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return evaluateBinary(sessionFactory, fingerprint, body);
+    }
+
+    private Response evaluateBinary(SessionFactory sessionFactory, String fingerprint, InputStream body) {
+        String expected = sessionFactory.getSchemaFingerprint();
+        if (!expected.equals(fingerprint)) {
+            String message = "Schema fingerprint " + fingerprint + " does not match " + expected + " of the current spec";
+            return Response.status(Response.Status.CONFLICT).type("application/json").header(BinaryRows.SCHEMA_HEADER, expected)
+                    .entity(JsonRows.error(message).build().toString()).build();
+        }
+        List<Object[]> rows;
+        try {
+            rows = BinaryRows.read(sessionFactory, body);
+        } catch (IOException | IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).type("application/json").entity(JsonRows.error(e.getMessage()).build().toString()).build();
+        }
+        List<EvaluationResult> results = RuleService.getOutputsForValues(sessionFactory, rows);
+        StreamingOutput output = stream -> {
+            long start = RuleMetrics.start();
+            BinaryRows.write(sessionFactory, results, stream);
+            RuleMetrics.record(RuleMetrics.Phase.SERIALIZE, start);
+        };
+        return Response.ok(output).header(BinaryRows.SCHEMA_HEADER, expected).build();
+    }
+
+    private Response evaluate(SessionFactory sessionFactory, String body) {
+        JsonArray rows;
+        try {
+            rows = Json.createReader(new StringReader(body)).readArray();
+        } catch (JsonException | IllegalStateException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(JsonRows.error("Expected a JSON array of input objects").build().toString()).build();
+        }
+        List<Map<String, String[]>> parameters = new ArrayList<>(rows.size());
+        for (JsonValue row : rows) {
+            parameters.add(JsonRows.getParameters(row));
+        }
+        List<EvaluationResult> results = RuleService.getOutputs(sessionFactory, parameters);
+        long start = RuleMetrics.start();
+        JsonArrayBuilder output = Json.createArrayBuilder();
+        for (int index = 0; index < results.size(); index++) {
+            if (rows.get(index).getValueType() != JsonValue.ValueType.OBJECT) {
+                output.add(JsonRows.error("Row " + index + " is not a JSON object"));
+            } else {
+                output.add(JsonRows.toJson(results.get(index)));
+            }
+        }
+        String json = output.build().toString();
+        RuleMetrics.record(RuleMetrics.Phase.SERIALIZE, start);
+        return Response.ok(json).build();
+    }
+
+    /**
+     * Evaluates a JSON object with an array of values per input, such as <code>{"quantity": [1, 12], "member": [true,
+     * false]}</code>, and returns an array with one result per row like {@link #doPost(String)}. Specs over numeric and
+     * boolean inputs are evaluated a column at a time.
+     */
+    @POST
+    @Path("columns")
+    @Consumes("application/json")
+    @Produces("application/json")
+    public Response doPostColumns(String body) {
+        return evaluateColumns(SessionFactory.getInstance(), body);
+    }
+
+    @POST
+    @Path("{service}/columns")
+    @Consumes("application/json")
+    @Produces("application/json")
+    public Response doPostColumns(@PathParam("service") String service, String body) {
+        SessionFactory sessionFactory = SessionFactory.getInstance(service);
+        if (sessionFactory == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return evaluateColumns(sessionFactory, body);
+    }
+
+    private Response evaluateColumns(SessionFactory sessionFactory, String body) {
+        List<EvaluationResult> results;
+        try {
+            JsonObject columns = Json.createReader(new StringReader(body)).readObject();
+            results = RuleService.getOutputsForColumns(sessionFactory, JsonRows.getColumns(sessionFactory, columns));
+        } catch (JsonException | IllegalStateException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(JsonRows.error("Expected a JSON object of input columns").build().toString()).build();
+        } catch (InvalidInputException e) {
+            return invalidInput(e);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(JsonRows.error(e.getMessage()).build().toString()).build();
+        }
+        long start = RuleMetrics.start();
+        JsonArrayBuilder output = Json.createArrayBuilder();
+        for (EvaluationResult result : results) {
+            output.add(JsonRows.toJson(result));
+        }
+        String json = output.build().toString();
+        RuleMetrics.record(RuleMetrics.Phase.SERIALIZE, start);
+        return Response.ok(json).build();
+    }
+
+    /**
+     * Streams the scores of an NDJSON or CSV body, one output row per input row in the same order, while the body is
+     * still being read. See {@link BulkScorer} for the formats.
+     */
+    @POST
+    @Path("bulk")
+    @Consumes({"application/x-ndjson", "text/csv"})
+    @Produces({"application/x-ndjson", "text/csv"})
+    public Response doBulk(@HeaderParam("Content-Type") String contentType, InputStream body) {
+        return bulk(SessionFactory.getInstance(), contentType, body);
+    }
+
+    @POST
+    @Path("{service}/bulk")
+    @Consumes({"application/x-ndjson", "text/csv"})
+    @Produces({"application/x-ndjson", "text/csv"})
+    public Response doBulk(@PathParam("service") String service, @HeaderParam("Content-Type") String contentType, InputStream body) {
+        SessionFactory sessionFactory = SessionFactory.getInstance(service);
+        if (sessionFactory == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return bulk(sessionFactory, contentType, body);
+    }
+
+    private Response bulk(SessionFactory sessionFactory, String contentType, InputStream body) {
+        BulkScorer.Format format = BulkScorer.Format.of(contentType);
+        StreamingOutput stream = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            BulkScorer.fromSystemProperties(sessionFactory, System.out).score(new InputStreamReader(body, StandardCharsets.UTF_8), writer, format);
+            writer.flush();
+        };
+        return Response.ok(stream).type(format == BulkScorer.Format.CSV ? "text/csv" : "application/x-ndjson").build();
+    }
+
+    /**
+     * Opens a stateful evaluation session on the default spec, or on the named service given as a query parameter,
+     * evaluating the inputs in the optional JSON body. Follow-up requests only need to send the inputs that changed.
+     */
+    @POST
+    @Path("sessions")
+    @Produces("application/json")
+    public Response openSession(@QueryParam("service") String service, String body) {
+        SessionFactory sessionFactory = service == null ? SessionFactory.getInstance() : SessionFactory.getInstance(service);
+        if (sessionFactory == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        Map<String, String[]> parameters;
+        try {
+            parameters = getSessionParameters(body);
+        } catch (JsonException | IllegalStateException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(JsonRows.error("Expected a JSON object of inputs").build().toString()).build();
+        }
+        EvaluationSession session;
+        try {
+            session = EvaluationSessions.getInstance().open(sessionFactory);
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.TOO_MANY_REQUESTS).entity(JsonRows.error(e.getMessage()).build().toString()).build();
+        }
+        return sessionResponse(session, parameters);
+    }
+
+    /**
+     * Updates the inputs present in the JSON body, clearing those set to null, and returns the new output.
+     */
+    @PUT
+    @Path("sessions/{id}")
+    @Consumes("application/json")
+    @Produces("application/json")
+    public Response updateSession(@PathParam("id") String id, String body) {
+        EvaluationSession session = EvaluationSessions.getInstance().get(id);
+        if (session == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        try {
+            return sessionResponse(session, getSessionParameters(body));
+        } catch (JsonException | IllegalStateException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(JsonRows.error("Expected a JSON object of inputs").build().toString()).build();
+        }
+    }
+
+    @GET
+    @Path("sessions/{id}")
+    @Produces("application/json")
+    public Response getSession(@PathParam("id") String id) {
+        EvaluationSession session = EvaluationSessions.getInstance().get(id);
+        if (session == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        JsonObjectBuilder json = JsonRows.toJson(EvaluationResult.success(session.getOutput())).add("id", id);
+        return Response.ok(json.build().toString()).build();
+    }
+
+    @DELETE
+    @Path("sessions/{id}")
+    public Response closeSession(@PathParam("id") String id) {
+        if (!EvaluationSessions.getInstance().close(id)) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.noContent().build();
+    }
+
+    private static Map<String, String[]> getSessionParameters(String body) {
+        if (body == null || body.trim().isEmpty()) {
+            return new HashMap<>();
+        }
+        JsonObject inputs = Json.createReader(new StringReader(body)).readObject();
+        Map<String, String[]> parameters = JsonRows.getParameters(inputs);
+        for (Map.Entry<String, JsonValue> entry : inputs.entrySet()) {
+            if (entry.getValue().getValueType() == JsonValue.ValueType.NULL) {
+                parameters.put(entry.getKey(), null);
+            }
+        }
+        return parameters;
+    }
+
+    private static Response sessionResponse(EvaluationSession session, Map<String, String[]> parameters) {
+        EvaluationResult result;
+        try {
+            result = EvaluationResult.success(session.update(parameters));
+        } catch (InvalidInputException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(JsonRows.error(e).add("id", session.getId()).build().toString()).build();
+        } catch (RuntimeException e) {
+            result = EvaluationResult.failure(e);
+        }
+        JsonObjectBuilder json = JsonRows.toJson(result).add("id", session.getId());
+        return Response.ok(json.build().toString()).build();
+    }
+
+    @GET
+    @Path("stats/pool")
+    @Produces("application/json")
+    public Response getPoolStats() {
+        return getPoolStats(SessionFactory.getInstance());
+    }
+
+    @GET
+    @Path("{service}/stats/pool")
+    @Produces("application/json")
+    public Response getPoolStats(@PathParam("service") String service) {
+        SessionFactory sessionFactory = SessionFactory.getInstance(service);
+        if (sessionFactory == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return getPoolStats(sessionFactory);
+    }
+
+    private static Response getPoolStats(SessionFactory sessionFactory) {
+        SessionPool pool = sessionFactory.getSessionPool();
+        JsonObject stats = Json.createObjectBuilder()
+                .add("maxSize", pool.getMaxSize())
+                .add("borrowTimeoutMillis", pool.getBorrowTimeoutMillis())
+                .add("created", pool.getCreated())
+                .add("active", pool.getActive())
+                .add("idle", pool.getIdle())
+                .add("borrowCount", pool.getBorrowCount())
+                .add("waitCount", pool.getWaitCount())
+                .add("timeoutCount", pool.getTimeoutCount())
+                .build();
+        return Response.ok(stats.toString()).build();
+    }
+
+    /**
+     * The executor is shared by every service, so its stats have no per-service variant.
+     */
+    @GET
+    @Path("stats/executor")
+    @Produces("application/json")
+    public Response getExecutorStats() {
+        EvaluationExecutor executor = EvaluationExecutor.getInstance();
+        JsonObject stats = Json.createObjectBuilder()
+                .add("concurrency", executor.getConcurrency())
+                .add("queueDepth", executor.getQueueDepth())
+                .add("virtual", executor.isVirtual())
+                .add("inFlight", executor.getInFlight())
+                .add("rejectedCount", executor.getRejectedCount())
+                .build();
+        return Response.ok(stats.toString()).build();
+    }
+
+    @GET
+    @Path("stats/cache")
+    @Produces("application/json")
+    public Response getCacheStats() {
+        return getCacheStats(SessionFactory.getInstance());
+    }
+
+    @GET
+    @Path("{service}/stats/cache")
+    @Produces("application/json")
+    public Response getCacheStats(@PathParam("service") String service) {
+        SessionFactory sessionFactory = SessionFactory.getInstance(service);
+        if (sessionFactory == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return getCacheStats(sessionFactory);
+    }
+
+    private static Response getCacheStats(SessionFactory sessionFactory) {
+        ResultCache cache = sessionFactory.getResultCache();
+        if (cache == null) {
+            return Response.ok(Json.createObjectBuilder().add("enabled", false).build().toString()).build();
+        }
+        JsonObject stats = Json.createObjectBuilder()
+                .add("enabled", true)
+                .add("maxSize", cache.getMaxSize())
+                .add("ttlMillis", cache.getTtlMillis())
+                .add("size", cache.getSize())
+                .add("hitCount", cache.getHitCount())
+                .add("missCount", cache.getMissCount())
+                .add("evictionCount", cache.getEvictionCount())
+                .build();
+        return Response.ok(stats.toString()).build();
+    }
+
+    @GET
+    @Path("stats/build")
+    @Produces("application/json")
+    public Response getBuildStats() {
+        return getBuildStats(SessionFactory.getInstance());
+    }
+
+    @GET
+    @Path("{service}/stats/build")
+    @Produces("application/json")
+    public Response getBuildStats(@PathParam("service") String service) {
+        SessionFactory sessionFactory = SessionFactory.getInstance(service);
+        if (sessionFactory == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return getBuildStats(sessionFactory);
+    }
+
+    private static Response getBuildStats(SessionFactory sessionFactory) {
+        JsonObject stats = Json.createObjectBuilder()
+                .add("mode", sessionFactory.getBuildMode())
+                .add("millis", sessionFactory.getBuildMillis())
+                .add("decisionTable", sessionFactory.getDecisionTableSize())
+                .add("schema", sessionFactory.getSchemaFingerprint())
+                .build();
+        return Response.ok(stats.toString()).build();
+    }
+
+    /**
+     * Replaces the spec with the one in the request body. The new spec is compiled and validated before it takes
+     * over; on failure the current spec keeps serving and the error is returned. Disabled unless
+     * <code>zenithr.admin.enabled</code> is set.
+     */
+    @POST
+    @Path("admin/spec")
+    @Consumes("application/json")
+    @Produces("application/json")
+    public Response reloadSpec(String spec) {
+        if (!Boolean.getBoolean(ADMIN_ENABLED)) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        SessionFactory sessionFactory;
         try {
-            Object output = RuleService.getOutput(request.getParameterMap());
-            return Response.ok(output).build();
-        } catch (Exception e) {
-            throw new WebApplicationException(e);
+            sessionFactory = SessionFactory.reload(spec);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return Response.status(Response.Status.BAD_REQUEST).entity(JsonRows.error(String.valueOf(e.getMessage())).build().toString()).build();
         }
+        JsonObject result = Json.createObjectBuilder()
+                .add("name", sessionFactory.getServiceName())
+                .add("mode", sessionFactory.getBuildMode())
+                .add("millis", sessionFactory.getBuildMillis())
+                .add("decisionTable", sessionFactory.getDecisionTableSize())
+                .build();
+        return Response.ok(result.toString()).build();
     }
 }
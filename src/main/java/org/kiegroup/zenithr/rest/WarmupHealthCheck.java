@@ -0,0 +1,29 @@
+package org.kiegroup.zenithr.rest;
+
+import org.eclipse.microprofile.health.Health;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.kiegroup.zenithr.drools.Warmup;
+
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Reports the service down on <code>/health</code> until the spec has been warmed up, so the readiness probe only
+ * sends traffic to a pod that no longer runs cold. The liveness probe checks <code>/</code> instead, which answers
+ * during the warm-up too, so a slow warm-up does not get the pod restarted.
+ */
+@Health
+@ApplicationScoped
+public class WarmupHealthCheck implements HealthCheck {
+
+    @Override
+    public HealthCheckResponse call() {
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("warmup");
+        Warmup warmup = Warmup.getCurrent();
+        if (warmup != null) {
+            response.withData("evaluations", warmup.getIterations());
+        }
+        return response.state(Warmup.isReady()).build();
+    }
+}
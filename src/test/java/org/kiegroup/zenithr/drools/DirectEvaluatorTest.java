@@ -0,0 +1,306 @@
+package org.kiegroup.zenithr.drools;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kiegroup.zenithr.direct.HitPolicy;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.StringReader;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DirectEvaluatorTest {
+
+    private static final String GRADES = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= 90 && grade <= 100\", \"then\": {\"output\": \"A\"}}, {\"when\": \"grade >= 80 && grade < 90\", \"then\": {\"output\": \"B\"}}, {\"when\": \"grade >= 70 && grade < 80\", \"then\": {\"output\": \"C\"}}, {\"when\": \"grade >= 60 && grade < 70\", \"then\": {\"output\": \"D\"}}, {\"when\": \"grade < 60\", \"then\": {\"output\": \"F\"}}], \"output\": {\"type\": \"string\"}%s}";
+    private static final String AVERAGE = "{ \"input\": [ { \"name\": \"math\", \"type\": \"double\" }, { \"name\": \"physics\", \"type\": \"double\" }, { \"name\": \"biology\", \"type\": \"double\" } ], \"rules\": [ { \"when\": \"biology >= 0\", \"then\": { \"output\": \"(math + physics + biology) / 3\" } } ], \"output\": { \"type\": \"double\" }%s }";
+    private static final String DISCOUNT = "{ \"input\": [ { \"name\": \"quantity\", \"type\": \"int\" }, { \"name\": \"member\", \"type\": \"boolean\" } ], \"rules\": [ { \"when\": \"quantity > 0\", \"then\": { \"output\": \"quantity * 10\" } }, { \"when\": \"quantity >= 10 && !member\", \"then\": { \"output\": \"quantity * 9\" } }, { \"when\": \"quantity >= 10 && member || quantity % 7 == 0\", \"then\": { \"output\": \"quantity * 8 - (quantity / 3)\" } } ], \"output\": { \"type\": \"int\" }%s }";
+
+    @Test
+    public void testGradeConformance() {
+        List<Map<String, String[]>> rows = new ArrayList<>();
+        for (double grade = -5; grade <= 105; grade += 2.5) {
+            rows.add(row("grade", grade));
+        }
+        rows.add(row("grade", 89.99));
+        rows.add(new HashMap<>());
+        assertConformance(GRADES, rows);
+    }
+
+    @Test
+    public void testAverageConformance() {
+        List<Map<String, String[]>> rows = new ArrayList<>();
+        rows.add(row("math", 96d, "physics", 95d, "biology", 91d));
+        rows.add(row("math", 0d, "physics", 12.5, "biology", 0d));
+        rows.add(row("math", 50d, "physics", 50d, "biology", -1d));
+        rows.add(row("math", 50d, "physics", 50d));
+        assertConformance(AVERAGE, rows);
+    }
+
+    @Test
+    public void testIntegerConformance() {
+        List<Map<String, String[]>> rows = new ArrayList<>();
+        for (int quantity = -1; quantity <= 30; quantity++) {
+            for (boolean member : new boolean[]{true, false}) {
+                Map<String, String[]> parameters = new HashMap<>();
+                parameters.put("quantity", new String[]{String.valueOf(quantity)});
+                parameters.put("member", new String[]{String.valueOf(member)});
+                rows.add(parameters);
+            }
+        }
+        assertConformance(DISCOUNT, rows);
+    }
+
+    @Test
+    public void testIntervalIndexNegativeZero() {
+        String spec = "{\"input\": [{\"name\": \"x\", \"type\": \"double\"}], \"rules\": [{\"when\": \"x < 0\", \"then\": {\"output\": \"negative\"}}, {\"when\": \"x >= 0\", \"then\": {\"output\": \"positive\"}}], \"output\": {\"type\": \"string\"}%s}";
+        List<Map<String, String[]>> rows = new ArrayList<>();
+        for (String x : new String[]{"-0", "0", "-0.0", "0.0", "-0.5", "0.5"}) {
+            rows.add(row("x", x));
+        }
+        assertConformance(spec, rows);
+
+        System.setProperty("GET", String.format(spec, ", \"engine\": \"auto\""));
+        SessionFactory.init();
+        Assert.assertTrue(SessionFactory.getInstance().getDirectEvaluator().isIndexed());
+        Assert.assertEquals("positive", RuleService.getOutput(row("x", "-0")));
+        Assert.assertEquals("positive", RuleService.getOutput(row("x", "0")));
+    }
+
+    @Test
+    public void testIntervalIndexConformance() {
+        StringBuilder rules = new StringBuilder();
+        for (int band = 0; band < 200; band++) {
+            rules.append(String.format("{\"when\": \"%d <= amount && amount < %d\", \"then\": {\"output\": \"band%d\"}}, ", band * 5, band * 5 + 5, band));
+        }
+        rules.append("{\"when\": \"amount > 100 && amount <= 150.5\", \"then\": {\"output\": \"overlap\"}}, ");
+        rules.append("{\"when\": \"amount == 42\", \"then\": {\"output\": \"exact\"}}, ");
+        rules.append("{\"when\": \"amount < 0 && amount > -3\", \"then\": {\"output\": \"negative\"}}");
+        String spec = "{\"input\": [{\"name\": \"amount\", \"type\": \"double\"}], \"rules\": [" + rules + "], \"output\": {\"type\": \"string\"}%s}";
+
+        List<Map<String, String[]>> rows = new ArrayList<>();
+        for (double amount = -5; amount <= 1005; amount += 0.5) {
+            rows.add(row("amount", amount));
+        }
+        rows.add(row("amount", 150.5));
+        rows.add(row("amount", 150.25));
+        rows.add(row("amount", -3));
+        assertConformance(spec, rows);
+
+        System.setProperty("GET", String.format(spec, ", \"engine\": \"auto\""));
+        SessionFactory.init();
+        Assert.assertTrue(SessionFactory.getInstance().getDirectEvaluator().isIndexed());
+        Assert.assertEquals("exact", RuleService.getOutput(row("amount", 42)));
+        Assert.assertEquals("band8", RuleService.getOutput(row("amount", 42.5)));
+    }
+
+    @Test
+    public void testHitPolicyConformance() {
+        List<Map<String, String[]>> rows = new ArrayList<>();
+        for (int quantity = -1; quantity <= 30; quantity++) {
+            rows.add(row("quantity", quantity, "member", quantity % 3 == 0));
+        }
+        for (String hitPolicy : new String[]{"first", "unique", "collect"}) {
+            String spec = DISCOUNT.replace("%s", ", \"hitPolicy\": \"" + hitPolicy + "\"%s");
+            assertConformance(spec, rows);
+        }
+        Map<String, String[]> parameters = row("quantity", 14, "member", false);
+        Assert.assertEquals(Arrays.asList(140, 126, 108), RuleService.getOutput(parameters));
+        Assert.assertEquals(HitPolicy.COLLECT, SessionFactory.getInstance().getHitPolicy());
+
+        System.setProperty("GET", String.format(DISCOUNT.replace("%s", ", \"hitPolicy\": \"unique\"%s"), ", \"engine\": \"drools\""));
+        SessionFactory.init();
+        List<EvaluationResult> results = RuleService.getOutputs(Arrays.asList(parameters, row("quantity", 5, "member", true)));
+        Assert.assertEquals("More than one rule matched: rule1, rule2, rule3", results.get(0).getError());
+        Assert.assertEquals(50, results.get(1).getOutput());
+
+        String overlapping = GRADES.replace("\"grade < 60\"", "\"grade < 95\"").replace("%s", ", \"hitPolicy\": \"first\"%s");
+        List<Map<String, String[]>> grades = new ArrayList<>();
+        for (double grade = -5; grade <= 105; grade += 2.5) {
+            grades.add(row("grade", grade));
+        }
+        assertConformance(overlapping, grades);
+        System.setProperty("GET", String.format(overlapping, ", \"engine\": \"auto\""));
+        SessionFactory.init();
+        Assert.assertTrue(SessionFactory.getInstance().getDirectEvaluator().isIndexed());
+        Assert.assertEquals("A", RuleService.getOutput(row("grade", 92.5)));
+        Assert.assertEquals("D", RuleService.getOutput(row("grade", 65)));
+        Assert.assertEquals("F", RuleService.getOutput(row("grade", 20)));
+    }
+
+    @Test
+    public void testLongInputsUseDrools() {
+        String spec = "{\"input\": [{\"name\": \"amount\", \"type\": \"long\"}], \"rules\": [{\"when\": \"amount > 9007199254740992\", \"then\": {\"output\": \"above\"}}, {\"when\": \"amount <= 9007199254740992\", \"then\": {\"output\": \"below\"}}], \"output\": {\"type\": \"string\"}%s}";
+        for (String engine : new String[]{"auto", "direct"}) {
+            System.setProperty("GET", String.format(spec, ", \"engine\": \"" + engine + "\""));
+            SessionFactory.init();
+            // 2^53 + 1 is the same double as 2^53, so only the rule engine tells them apart
+            Assert.assertNull(SessionFactory.getInstance().getDirectEvaluator());
+            Assert.assertEquals("above", RuleService.getOutput(row("amount", 9007199254740993L)));
+            Assert.assertEquals("below", RuleService.getOutput(row("amount", 9007199254740992L)));
+            List<EvaluationResult> results = RuleService.getOutputsForColumns(SessionFactory.getInstance(), new Object[]{new long[]{9007199254740993L, 9007199254740992L}});
+            Assert.assertEquals("above", results.get(0).getOutput());
+            Assert.assertEquals("below", results.get(1).getOutput());
+        }
+    }
+
+    @Test
+    public void testUnsupportedSpecFallsBack() {
+        String json = "{\"input\": [{\"name\": \"name\", \"type\": \"string\"}], \"rules\": [{\"when\": \"name == \\\"x\\\"\", \"then\": {\"output\": \"true\"}}], \"output\": {\"type\": \"boolean\"}, \"engine\": \"direct\"}";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+        Assert.assertNull(SessionFactory.getInstance().getDirectEvaluator());
+
+        Map<String, String[]> parameters = new HashMap<>();
+        parameters.put("name", new String[]{"x"});
+        Assert.assertEquals(Boolean.TRUE, RuleService.getOutput(parameters));
+    }
+
+    private void assertConformance(String spec, List<Map<String, String[]>> rows) {
+        System.setProperty("GET", String.format(spec, ", \"engine\": \"drools\""));
+        SessionFactory.init();
+        Assert.assertNull(SessionFactory.getInstance().getDirectEvaluator());
+        List<Object> expected = new ArrayList<>();
+        for (Map<String, String[]> parameters : rows) {
+            expected.add(outcome(parameters));
+        }
+
+        System.setProperty("GET", String.format(spec, ", \"engine\": \"direct\""));
+        SessionFactory.init();
+        Assert.assertNotNull(SessionFactory.getInstance().getDirectEvaluator());
+        for (int index = 0; index < rows.size(); index++) {
+            Assert.assertEquals("Row " + index, expected.get(index), outcome(rows.get(index)));
+        }
+
+        System.setProperty("GET", String.format(spec, ", \"engine\": \"auto\""));
+        SessionFactory.init();
+        assertColumnConformance(SessionFactory.getInstance(), rows, expected);
+    }
+
+    /**
+     * Evaluates the rows that have every input as columns, expecting the same outputs as row by row.
+     */
+    private void assertColumnConformance(SessionFactory sessionFactory, List<Map<String, String[]>> rows, List<Object> expected) {
+        ValueType[] types = sessionFactory.getInputTypes();
+        List<Object[]> complete = new ArrayList<>();
+        List<Object> completeExpected = new ArrayList<>();
+        for (int index = 0; index < rows.size(); index++) {
+            Object[] values = sessionFactory.getValues(rows.get(index));
+            if (!Arrays.asList(values).contains(null)) {
+                complete.add(values);
+                completeExpected.add(expected.get(index));
+            }
+        }
+        Object[] columns = new Object[types.length];
+        for (int slot = 0; slot < types.length; slot++) {
+            Object column;
+            switch (types[slot]) {
+                case BOOLEAN:
+                    column = new boolean[complete.size()];
+                    break;
+                case INT:
+                    column = new int[complete.size()];
+                    break;
+                case LONG:
+                    column = new long[complete.size()];
+                    break;
+                default:
+                    column = new double[complete.size()];
+            }
+            for (int row = 0; row < complete.size(); row++) {
+                Array.set(column, row, complete.get(row)[slot]);
+            }
+            columns[slot] = column;
+        }
+        List<EvaluationResult> results = RuleService.getOutputsForColumns(sessionFactory, columns);
+        Assert.assertEquals(complete.size(), results.size());
+        for (int row = 0; row < results.size(); row++) {
+            EvaluationResult result = results.get(row);
+            Assert.assertEquals("Column row " + row, completeExpected.get(row), result.isSuccess() ? result.getOutput() : "error: " + result.getError());
+        }
+    }
+
+    /**
+     * @return the output of the row, or its error prefixed with "error: ", so that failures are compared too
+     */
+    private static Object outcome(Map<String, String[]> parameters) {
+        try {
+            return RuleService.getOutput(parameters);
+        } catch (RuntimeException e) {
+            return "error: " + e.getMessage();
+        }
+    }
+
+    @Test
+    public void testColumnEvaluation() {
+        String spec = "{\"input\": [{\"name\": \"amount\", \"type\": \"int\"}, {\"name\": \"parts\", \"type\": \"int\"}], \"rules\": [{\"when\": \"parts == 0\", \"then\": {\"output\": \"0\"}}, {\"when\": \"parts != 0\", \"then\": {\"output\": \"amount / parts\"}}], \"output\": {\"type\": \"long\"}%s}";
+        List<Map<String, String[]>> rows = new ArrayList<>();
+        for (int parts = -2; parts <= 2; parts++) {
+            rows.add(row("amount", 17, "parts", parts));
+        }
+        // the division by zero in a row whose rule does not match falls back to evaluating row by row
+        assertConformance(spec, rows);
+
+        System.setProperty("GET", String.format(DISCOUNT, ", \"engine\": \"auto\""));
+        SessionFactory.init();
+        Assert.assertNull(SessionFactory.getInstance().getDirectEvaluator());
+        List<EvaluationResult> results = RuleService.getOutputsForColumns(SessionFactory.getInstance(), new Object[]{new int[]{5, 14}, new boolean[]{true, false}});
+        Assert.assertEquals(50, results.get(0).getOutput());
+        Assert.assertEquals(108, results.get(1).getOutput());
+        try {
+            RuleService.getOutputsForColumns(SessionFactory.getInstance(), new Object[]{new long[]{5}, new boolean[]{true}});
+            Assert.fail("Expected a type mismatch");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Column quantity does not match input type int", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testJsonColumnsAreExact() {
+        System.setProperty("GET", String.format(DISCOUNT, ", \"engine\": \"auto\""));
+        SessionFactory.init();
+        SessionFactory sessionFactory = SessionFactory.getInstance();
+        Object[] columns = JsonRows.getColumns(sessionFactory, columns("{\"quantity\": [5, 14.0], \"member\": [true, false]}"));
+        Assert.assertArrayEquals(new int[]{5, 14}, (int[]) columns[0]);
+        for (String quantity : new String[]{"1.5", "2147483648", "\"5\"", "null"}) {
+            try {
+                JsonRows.getColumns(sessionFactory, columns("{\"quantity\": [" + quantity + "], \"member\": [true]}"));
+                Assert.fail("Expected " + quantity + " to be refused");
+            } catch (InvalidInputException e) {
+                Assert.assertEquals("Invalid int value for quantity: " + quantity, e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testNonFiniteOutputFailsOnlyItsRow() {
+        String spec = "{\"input\": [{\"name\": \"amount\", \"type\": \"double\"}, {\"name\": \"parts\", \"type\": \"double\"}], \"rules\": [{\"when\": \"parts >= 0\", \"then\": {\"output\": \"amount / parts\"}}], \"output\": {\"type\": \"double\"}%s}";
+        for (String engine : new String[]{"drools", "direct"}) {
+            System.setProperty("GET", String.format(spec, ", \"engine\": \"" + engine + "\""));
+            SessionFactory.init();
+            List<EvaluationResult> results = RuleService.getOutputs(Arrays.asList(row("amount", 6, "parts", 0), row("amount", 0, "parts", 0), row("amount", 6, "parts", 4)));
+            Assert.assertEquals(engine, "{\"error\":\"Output is not a finite number: Infinity\"}", JsonRows.toJson(results.get(0)).build().toString());
+            Assert.assertEquals(engine, "{\"error\":\"Output is not a finite number: NaN\"}", JsonRows.toJson(results.get(1)).build().toString());
+            Assert.assertEquals(engine, "{\"output\":1.5}", JsonRows.toJson(results.get(2)).build().toString());
+        }
+    }
+
+    private static JsonObject columns(String json) {
+        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+            return reader.readObject();
+        }
+    }
+
+    private static Map<String, String[]> row(Object... namesAndValues) {
+        Map<String, String[]> parameters = new HashMap<>();
+        for (int index = 0; index < namesAndValues.length; index += 2) {
+            parameters.put((String) namesAndValues[index], new String[]{String.valueOf(namesAndValues[index + 1])});
+        }
+        return parameters;
+    }
+}
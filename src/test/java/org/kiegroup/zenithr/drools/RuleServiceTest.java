@@ -3,8 +3,26 @@ package org.kiegroup.zenithr.drools;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.json.Json;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public class RuleServiceTest {
 
@@ -43,6 +61,487 @@ public class RuleServiceTest {
         Assert.assertEquals(94d, (Double) object, 0d);
     }
 
+    @Test
+    public void testSessionReuse() {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= 50\", \"then\": {\"output\": \"pass\"}}], \"output\": {\"type\": \"string\"}, \"engine\": \"drools\"}";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+
+        Assert.assertEquals("pass", grade(75d));
+        Assert.assertNull(grade(25d));
+        Assert.assertEquals("pass", grade(50d));
+
+        SessionPool pool = SessionFactory.getInstance().getSessionPool();
+        Assert.assertEquals(1, pool.getCreated());
+        Assert.assertEquals(1, pool.getIdle());
+        Assert.assertEquals(0, pool.getActive());
+        Assert.assertEquals(3, pool.getBorrowCount());
+    }
+
+    @Test
+    public void testBatchGrades() {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= 90\", \"then\": {\"output\": \"A\"}}, {\"when\": \"grade < 90\", \"then\": {\"output\": \"B\"}}], \"output\": {\"type\": \"string\"}, \"engine\": \"drools\"}";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+
+        List<Map<String, String[]>> rows = new ArrayList<>();
+        for (double value : new double[]{95d, 42d, 90d}) {
+            Map<String, String[]> parameters = new HashMap<>();
+            parameters.put("grade", new String[]{String.valueOf(value)});
+            rows.add(parameters);
+        }
+        List<EvaluationResult> results = RuleService.getOutputs(rows);
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals("A", results.get(0).getOutput());
+        Assert.assertEquals("B", results.get(1).getOutput());
+        Assert.assertEquals("A", results.get(2).getOutput());
+        Assert.assertEquals(1, SessionFactory.getInstance().getSessionPool().getBorrowCount());
+    }
+
+    @Test
+    public void testExecutableModel() {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= 90 && grade <= 100\", \"then\": {\"output\": \"A\"}}, {\"when\": \"grade >= 80 && grade < 90\", \"then\": {\"output\": \"B\"}}, {\"when\": \"grade < 80\", \"then\": {\"output\": \"C\"}}], \"output\": {\"type\": \"string\"}, \"engine\": \"drools\"}";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+        long drlMillis = SessionFactory.getInstance().getBuildMillis();
+        try {
+            System.setProperty(SessionFactory.BUILD_MODE, SessionFactory.EXECUTABLE_MODEL_MODE);
+            SessionFactory.init();
+            Assert.assertEquals(SessionFactory.EXECUTABLE_MODEL_MODE, SessionFactory.getInstance().getBuildMode());
+            System.out.println("Build time: drl " + drlMillis + " ms, executable model " + SessionFactory.getInstance().getBuildMillis() + " ms");
+
+            Assert.assertEquals("A", grade(92.5));
+            Assert.assertEquals("B", grade(84.5));
+            Assert.assertEquals("C", grade(70d));
+        } finally {
+            System.clearProperty(SessionFactory.BUILD_MODE);
+        }
+    }
+
+    @Test
+    public void testKieBaseCache() throws IOException {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= 60\", \"then\": {\"output\": \"P\"}}, {\"when\": \"grade < 60\", \"then\": {\"output\": \"F\"}}], \"output\": {\"type\": \"string\"}}";
+        System.setProperty("GET", json);
+        Path directory = Files.createTempDirectory("zenithr-cache");
+        System.setProperty(KieBaseCache.CACHE_DIR, directory.toString());
+        try {
+            SessionFactory.init();
+            List<Path> entries = Files.list(directory).collect(Collectors.toList());
+            Assert.assertEquals(1, entries.size());
+
+            SessionFactory.init();
+            Assert.assertEquals("P", grade(75d));
+            Assert.assertEquals("F", grade(25d));
+
+            Files.write(entries.get(0), new byte[]{1, 2, 3});
+            SessionFactory.init();
+            Assert.assertEquals("P", grade(75d));
+            Assert.assertTrue(Files.size(entries.get(0)) > 3);
+        } finally {
+            System.clearProperty(KieBaseCache.CACHE_DIR);
+        }
+    }
+
+    @Test
+    public void testGenericFactModel() {
+        String json = "{ \"input\": [ { \"name\": \"math\", \"type\": \"double\" }, { \"name\": \"physics\", \"type\": \"double\" } ], \"rules\": [ { \"when\": \"math >= 50\", \"then\": { \"output\": \"(math + physics) / 2\" } } ], \"output\": { \"type\": \"double\" }, \"engine\": \"drools\" }";
+        System.setProperty("GET", json);
+        System.setProperty(SessionFactory.FACT_MODEL, SessionFactory.GENERIC_FACTS);
+        try {
+            SessionFactory.init();
+            Map<String, String[]> parameters = new HashMap<>();
+            parameters.put("math", new String[]{"80"});
+            parameters.put("physics", new String[]{"70"});
+            Assert.assertEquals(2, SessionFactory.getInstance().getFacts(parameters).size());
+            Assert.assertEquals(75d, (Double) RuleService.getOutput(parameters), 0d);
+        } finally {
+            System.clearProperty(SessionFactory.FACT_MODEL);
+        }
+    }
+
+    @Test
+    public void testTypedFacts() {
+        String json = "{ \"input\": [ { \"name\": \"age\", \"type\": \"int\" }, { \"name\": \"member\", \"type\": \"boolean\" } ], \"rules\": [ { \"when\": \"age >= 65 || member\", \"then\": { \"output\": \"true\" } } ], \"output\": { \"type\": \"boolean\" } }";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+
+        Map<String, String[]> parameters = new HashMap<>();
+        parameters.put("age", new String[]{"30"});
+        Assert.assertTrue(SessionFactory.getInstance().getFacts(parameters).isEmpty());
+        parameters.put("member", new String[]{"true"});
+        Assert.assertEquals(1, SessionFactory.getInstance().getFacts(parameters).size());
+        Assert.assertEquals(Boolean.TRUE, RuleService.getOutput(parameters));
+        parameters.put("member", new String[]{"false"});
+        Assert.assertNull(RuleService.getOutput(parameters));
+    }
+
+    @Test
+    public void testResultCache() {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= 50\", \"then\": {\"output\": \"pass\"}}], \"output\": {\"type\": \"string\"}, \"engine\": \"drools\"}";
+        System.setProperty("GET", json);
+        System.setProperty("zenithr.results.cache.size", "1");
+        try {
+            SessionFactory.init();
+            Assert.assertEquals("pass", grade(90d));
+            Map<String, String[]> parameters = new HashMap<>();
+            parameters.put("grade", new String[]{"90"});
+            Assert.assertEquals("pass", RuleService.getOutput(parameters));
+            Assert.assertNull(grade(10d));
+            Assert.assertNull(grade(10d));
+
+            ResultCache cache = SessionFactory.getInstance().getResultCache();
+            Assert.assertEquals(2, cache.getHitCount());
+            Assert.assertEquals(2, cache.getMissCount());
+            Assert.assertEquals(1, cache.getEvictionCount());
+            Assert.assertEquals(2, SessionFactory.getInstance().getSessionPool().getBorrowCount());
+
+            SessionFactory.init();
+            Assert.assertEquals(0, SessionFactory.getInstance().getResultCache().getSize());
+        } finally {
+            System.clearProperty("zenithr.results.cache.size");
+        }
+    }
+
+    @Test
+    public void testReload() {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= %s\", \"then\": {\"output\": \"pass\"}}], \"output\": {\"type\": \"string\"}, \"engine\": \"drools\"}";
+        System.setProperty("GET", String.format(json, "50"));
+        SessionFactory.init();
+        SessionFactory previous = SessionFactory.getInstance();
+        Assert.assertEquals("pass", grade(60d));
+        Assert.assertNull(grade(40d));
+
+        SessionFactory.reload(String.format(json, "70"));
+        Assert.assertNotSame(previous, SessionFactory.getInstance());
+        Assert.assertNull(grade(60d));
+        Assert.assertEquals("pass", grade(75d));
+
+        // a request that started before the swap still completes on the old spec
+        Assert.assertEquals("pass", RuleService.evaluate(previous, new Object[]{60d}));
+        Assert.assertEquals(0, previous.getSessionPool().getCreated());
+
+        try {
+            SessionFactory.reload(String.format(json, "nonsense"));
+            Assert.fail("Spec with invalid rules should not load");
+        } catch (RuntimeException e) {
+            Assert.assertNull(grade(60d));
+        }
+    }
+
+    @Test
+    public void testSpecRegistry() throws IOException {
+        String json = "{\"name\": \"%s\", \"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= 50\", \"then\": {\"output\": \"%s\"}}], \"output\": {\"type\": \"string\"}, \"engine\": \"drools\"}";
+        Path directory = Files.createTempDirectory("zenithr-specs");
+        try {
+            Files.write(directory.resolve("exam.json"), String.format(json, "Exam", "pass").getBytes());
+            Files.write(directory.resolve("loan.json"), String.format(json, "Loan", "approved").getBytes());
+            Files.write(directory.resolve("stats.json"), String.format(json, "Stats", "shadowed").getBytes());
+            System.setProperty("zenithr.results.cache.size", "10");
+            SpecRegistry registry = new SpecRegistry(directory, 1);
+            Assert.assertEquals(0, registry.getLoaded());
+
+            SessionFactory exam = registry.get("exam");
+            Assert.assertEquals("Exam", exam.getServiceName());
+            Assert.assertSame(exam, registry.get("exam"));
+            Map<String, String[]> parameters = new HashMap<>();
+            parameters.put("grade", new String[]{"75"});
+            Assert.assertEquals("pass", RuleService.getOutput(exam, parameters));
+            Assert.assertEquals(1, exam.getResultCache().getSize());
+
+            SessionFactory loan = registry.get("loan");
+            Assert.assertEquals("approved", RuleService.getOutput(loan, parameters));
+            Assert.assertEquals(1, registry.getLoaded());
+            // an unloaded spec does not keep its cached outputs
+            Assert.assertEquals(0, exam.getResultCache().getSize());
+            Assert.assertNotSame(exam, registry.get("exam"));
+
+            Assert.assertNull(registry.get("missing"));
+            Assert.assertNull(registry.get("../exam"));
+            // reserved for the endpoints of the default spec
+            Assert.assertNull(registry.get("stats"));
+
+            // a loaded spec is served without checking its file, until the watcher reports it changed
+            loan = registry.get("loan");
+            Files.delete(directory.resolve("loan.json"));
+            Assert.assertSame(loan, registry.get("loan"));
+            registry.fileChanged(directory.getFileSystem().getPath("loan.json"));
+            Assert.assertEquals(0, registry.getLoaded());
+            Assert.assertNull(registry.get("loan"));
+        } finally {
+            System.clearProperty("zenithr.results.cache.size");
+            for (Path file : Files.list(directory).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testBulkScoring() throws IOException {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= 50\", \"then\": {\"output\": \"pass\"}}, {\"when\": \"grade < 50\", \"then\": {\"output\": \"fail, retake\"}}], \"output\": {\"type\": \"string\"}, \"engine\": \"drools\"}";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+        BulkScorer scorer = new BulkScorer(SessionFactory.getInstance(), 2, 2, System.out);
+
+        StringWriter ndjson = new StringWriter();
+        String rows = "{\"grade\": 75}\n{\"grade\": 25}\n\n[1]\n{\"grade\": 50}\n{}\n";
+        Assert.assertEquals(5, scorer.score(new StringReader(rows), ndjson, BulkScorer.Format.NDJSON));
+        String[] lines = ndjson.toString().split("\n");
+        Assert.assertEquals(5, lines.length);
+        Assert.assertEquals("{\"output\":\"pass\"}", lines[0]);
+        Assert.assertEquals("{\"output\":\"fail, retake\"}", lines[1]);
+        Assert.assertTrue(lines[2].startsWith("{\"error\""));
+        Assert.assertEquals("{\"output\":\"pass\"}", lines[3]);
+        Assert.assertEquals("{\"output\":null}", lines[4]);
+
+        StringWriter csv = new StringWriter();
+        Assert.assertEquals(2, scorer.score(new StringReader("grade\n75\n\"25\"\n\n"), csv, BulkScorer.Format.CSV));
+        Assert.assertEquals("output,error\npass,\n\"fail, retake\",\n", csv.toString());
+    }
+
+    @Test
+    public void testBulkScoreCommandLine() throws IOException {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= 50\", \"then\": {\"output\": \"pass\"}}, {\"when\": \"grade < 50\", \"then\": {\"output\": \"fail\"}}], \"output\": {\"type\": \"string\"}}";
+        Path spec = Files.createTempFile("spec", ".json");
+        Path rows = Files.createTempFile("rows", ".ndjson");
+        Files.write(spec, json.getBytes(StandardCharsets.UTF_8));
+        Files.write(rows, "{\"grade\": 75}\n{\"grade\": 25}\n".getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(stdout, true));
+        try {
+            org.kiegroup.zenithr.cli.BulkScore.main(new String[]{spec.toString(), rows.toString()});
+        } finally {
+            System.setOut(original);
+            Files.delete(spec);
+            Files.delete(rows);
+        }
+        // the spec, its rules and the build log go to standard error, leaving only the scores on standard out
+        String[] lines = new String(stdout.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals("pass", Json.createReader(new StringReader(lines[0])).readObject().getString("output"));
+        Assert.assertEquals("fail", Json.createReader(new StringReader(lines[1])).readObject().getString("output"));
+    }
+
+    @Test
+    public void testEvaluationSession() {
+        String json = "{ \"input\": [ { \"name\": \"math\", \"type\": \"double\" }, { \"name\": \"physics\", \"type\": \"double\" } ], \"rules\": [ { \"when\": \"math >= 50\", \"then\": { \"output\": \"(math + physics) / 2\" } } ], \"output\": { \"type\": \"double\" }, \"engine\": \"drools\" }";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+        EvaluationSessions sessions = new EvaluationSessions(1, 60_000L);
+        EvaluationSession session = sessions.open(SessionFactory.getInstance());
+        try {
+            sessions.open(SessionFactory.getInstance());
+            Assert.fail("Only one session may be open");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(1, sessions.getSize());
+        }
+        Assert.assertSame(session, sessions.get(session.getId()));
+        assertSessionUpdates(session);
+
+        Assert.assertTrue(sessions.close(session.getId()));
+        Assert.assertNull(sessions.get(session.getId()));
+        Assert.assertNotNull(sessions.open(SessionFactory.getInstance()));
+
+        System.setProperty(SessionFactory.FACT_MODEL, SessionFactory.GENERIC_FACTS);
+        try {
+            SessionFactory.init();
+            assertSessionUpdates(new EvaluationSessions(1, 60_000L).open(SessionFactory.getInstance()));
+        } finally {
+            System.clearProperty(SessionFactory.FACT_MODEL);
+        }
+    }
+
+    @Test
+    public void testEvaluationSessionSweep() throws InterruptedException {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= 50\", \"then\": {\"output\": \"pass\"}}], \"output\": {\"type\": \"string\"}, \"engine\": \"drools\"}";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+        EvaluationSessions sessions = new EvaluationSessions(1, 10L);
+        sessions.scheduleSweep(10L);
+        sessions.open(SessionFactory.getInstance());
+        // closed by the timer, without another session being opened or looked up
+        for (int wait = 0; wait < 200 && sessions.getSize() > 0; wait++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, sessions.getSize());
+    }
+
+    private void assertSessionUpdates(EvaluationSession session) {
+        Map<String, String[]> parameters = new HashMap<>();
+        parameters.put("math", new String[]{"60"});
+        Assert.assertNull(session.update(parameters));
+        parameters.clear();
+        parameters.put("physics", new String[]{"80"});
+        Assert.assertEquals(70d, (Double) session.update(parameters), 0d);
+        parameters.clear();
+        parameters.put("math", new String[]{"40"});
+        Assert.assertNull(session.update(parameters));
+        parameters.put("math", new String[]{"100"});
+        Assert.assertEquals(90d, (Double) session.update(parameters), 0d);
+        parameters.put("math", null);
+        Assert.assertNull(session.update(parameters));
+        parameters.put("math", new String[]{"70"});
+        Assert.assertEquals(75d, (Double) session.update(parameters), 0d);
+    }
+
+    @Test
+    public void testDecisionTable() {
+        String json = "{\"input\": [{\"name\": \"member\", \"type\": \"boolean\"}, {\"name\": \"tier\", \"type\": \"string\", \"values\": [\"gold\", \"silver\", \"bronze\"]}], \"rules\": [{\"when\": \"member && tier != \\\"bronze\\\"\", \"then\": {\"output\": \"10\"}}, {\"when\": \"tier == \\\"platinum\\\"\", \"then\": {\"output\": \"20\"}}], \"output\": {\"type\": \"int\"}}";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+        Assert.assertEquals(6, SessionFactory.getInstance().getDecisionTableSize());
+
+        Map<String, String[]> parameters = new HashMap<>();
+        parameters.put("member", new String[]{"true"});
+        parameters.put("tier", new String[]{"silver"});
+        Assert.assertEquals(10, RuleService.getOutput(parameters));
+        parameters.put("tier", new String[]{"bronze"});
+        Assert.assertNull(RuleService.getOutput(parameters));
+        // outside the declared values, so evaluated by the engine
+        parameters.put("tier", new String[]{"platinum"});
+        Assert.assertEquals(20, RuleService.getOutput(parameters));
+
+        System.setProperty(DecisionTable.MAX_SIZE, "5");
+        try {
+            SessionFactory.init();
+            Assert.assertEquals(0, SessionFactory.getInstance().getDecisionTableSize());
+        } finally {
+            System.clearProperty(DecisionTable.MAX_SIZE);
+        }
+    }
+
+    @Test
+    public void testInvalidInput() {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}, {\"name\": \"due\", \"type\": \"date\"}], \"rules\": [{\"when\": \"grade >= 50 && due < \\\"2019-05-01\\\"\", \"then\": {\"output\": \"pass\"}}], \"output\": {\"type\": \"string\"}, \"engine\": \"drools\"}";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+
+        Map<String, String[]> parameters = new HashMap<>();
+        parameters.put("grade", new String[]{"75"});
+        parameters.put("due", new String[]{"2019-04-30"});
+        Assert.assertEquals("pass", RuleService.getOutput(parameters));
+        parameters.put("due", new String[]{"2019-05-02"});
+        Assert.assertNull(RuleService.getOutput(parameters));
+        parameters.put("due", new String[]{""});
+        Assert.assertNull(RuleService.getOutput(parameters));
+
+        parameters.put("grade", new String[]{"seventy"});
+        try {
+            RuleService.getOutput(parameters);
+            Assert.fail("Invalid grade should be rejected");
+        } catch (InvalidInputException e) {
+            Assert.assertEquals("grade", e.getInput());
+            Assert.assertEquals("double", e.getType());
+            Assert.assertEquals("seventy", e.getValue());
+        }
+        List<EvaluationResult> results = RuleService.getOutputs(Collections.singletonList(parameters));
+        Assert.assertEquals("Invalid double value for grade: seventy", results.get(0).getError());
+
+        Assert.assertEquals(new Date(1556668800000L), ValueType.DATETIME.parse("2019-05-01T00:00"));
+        Assert.assertEquals(Boolean.TRUE, ValueType.BOOLEAN.parse("TRUE"));
+    }
+
+    @Test
+    public void testWarmup() {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"int\"}, {\"name\": \"due\", \"type\": \"date\"}], \"rules\": [{\"when\": \"grade >= 50 && due < \\\"2019-05-01\\\"\", \"then\": {\"output\": \"pass\"}}, {\"when\": \"grade < -20\", \"then\": {\"output\": \"invalid\"}}], \"output\": {\"type\": \"string\"}}";
+        System.setProperty("GET", json);
+        System.setProperty("zenithr.results.cache.size", "100");
+        try {
+            SessionFactory.init();
+        } finally {
+            System.clearProperty("zenithr.results.cache.size");
+        }
+
+        Map<String, List<String>> candidates = Warmup.getCandidates(SessionFactory.getInstance());
+        Assert.assertTrue(candidates.get("grade").containsAll(Arrays.asList("49", "50", "51", "-21", "-20", "-19")));
+        Assert.assertTrue(candidates.get("due").containsAll(Arrays.asList("2019-04-30", "2019-05-01", "2019-05-02")));
+
+        Warmup warmup = new Warmup(SessionFactory.getInstance(), 60_000L, 500L);
+        warmup.run();
+        Assert.assertTrue(warmup.isDone());
+        Assert.assertEquals(500L, warmup.getIterations());
+        // synthetic inputs must not crowd real ones out of the cache
+        Assert.assertEquals(0, SessionFactory.getInstance().getResultCache().getSize());
+    }
+
+    @Test
+    public void testSlowEvaluationLog() {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}], \"rules\": [{\"when\": \"grade >= 50\", \"then\": {\"output\": \"pass\"}}], \"output\": {\"type\": \"string\"}, \"engine\": \"drools\"}";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        Diagnostics.configure(false, 1, 1000, new PrintStream(log, true));
+        List<EvaluationResult> results;
+        try {
+            Assert.assertEquals("pass", grade(92.5));
+            results = RuleService.getOutputsForValues(SessionFactory.getInstance(), Collections.singletonList(new Object[]{40d}));
+        } finally {
+            Diagnostics.configure(false, 0, 10, System.out);
+        }
+        Assert.assertNull(results.get(0).getOutput());
+        String[] lines = log.toString().split("\\R");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[0], lines[0].startsWith("Slow evaluation of Zenithr: "));
+        Assert.assertTrue(lines[0], lines[0].contains(", fire "));
+        Assert.assertTrue(lines[0], lines[0].contains(", 1 rules fired, inputs {grade=92.5}"));
+        // rows of typed values, such as those of a binary request, are logged with their values too
+        Assert.assertTrue(lines[1], lines[1].endsWith(", 0 rules fired, inputs {grade=40.0}"));
+        Assert.assertFalse(Diagnostics.isEnabled());
+    }
+
+    @Test
+    public void testBinaryRows() throws IOException {
+        String json = "{\"input\": [{\"name\": \"grade\", \"type\": \"double\"}, {\"name\": \"name\", \"type\": \"string\"}], \"rules\": [{\"when\": \"grade >= 50 && name != \\\"\\\"\", \"then\": {\"output\": \"pass\"}}], \"output\": {\"type\": \"string\"}}";
+        System.setProperty("GET", json);
+        SessionFactory.init();
+        SessionFactory sessionFactory = SessionFactory.getInstance();
+        Assert.assertEquals(16, sessionFactory.getSchemaFingerprint().length());
+        SessionFactory.init();
+        Assert.assertEquals(sessionFactory.getSchemaFingerprint(), SessionFactory.getInstance().getSchemaFingerprint());
+        Assert.assertNotEquals(sessionFactory.getSchemaFingerprint(), BinaryRows.getFingerprint(Collections.singletonMap("grade", "int"), "string"));
+
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(request);
+        out.writeInt(3);
+        out.writeByte(1);
+        out.writeDouble(75);
+        out.writeByte(1);
+        out.writeInt(3);
+        out.write("Ann".getBytes(StandardCharsets.UTF_8));
+        out.writeByte(1);
+        out.writeDouble(25);
+        out.writeByte(1);
+        out.writeInt(3);
+        out.write("Bob".getBytes(StandardCharsets.UTF_8));
+        out.writeByte(1);
+        out.writeDouble(75);
+        out.writeByte(0);
+        List<Object[]> rows = BinaryRows.read(sessionFactory, new ByteArrayInputStream(request.toByteArray()));
+        Assert.assertArrayEquals(new Object[]{75d, "Ann"}, rows.get(0));
+        Assert.assertArrayEquals(new Object[]{75d, null}, rows.get(2));
+
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        BinaryRows.write(sessionFactory, RuleService.getOutputsForValues(sessionFactory, rows), response);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(response.toByteArray()));
+        Assert.assertEquals(3, in.readInt());
+        Assert.assertEquals(1, in.readByte());
+        byte[] output = new byte[in.readInt()];
+        in.readFully(output);
+        Assert.assertEquals("pass", new String(output, StandardCharsets.UTF_8));
+        Assert.assertEquals(0, in.readByte());
+        Assert.assertEquals(0, in.readByte());
+        Assert.assertEquals(-1, in.read());
+
+        try {
+            BinaryRows.read(sessionFactory, new ByteArrayInputStream(Arrays.copyOf(request.toByteArray(), 10)));
+            Assert.fail("Truncated request should be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Request body ends before the last row", e.getMessage());
+        }
+    }
+
     @Test
     public void testSortInputs() {
         Map<String, String> map = new HashMap<>();